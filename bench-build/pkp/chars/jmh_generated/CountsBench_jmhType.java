@@ -0,0 +1,4 @@
+package pkp.chars.jmh_generated;
+public class CountsBench_jmhType extends CountsBench_jmhType_B3 {
+}
+
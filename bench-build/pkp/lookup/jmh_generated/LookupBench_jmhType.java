@@ -0,0 +1,4 @@
+package pkp.lookup.jmh_generated;
+public class LookupBench_jmhType extends LookupBench_jmhType_B3 {
+}
+
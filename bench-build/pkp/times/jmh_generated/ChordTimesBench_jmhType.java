@@ -0,0 +1,4 @@
+package pkp.times.jmh_generated;
+public class ChordTimesBench_jmhType extends ChordTimesBench_jmhType_B3 {
+}
+
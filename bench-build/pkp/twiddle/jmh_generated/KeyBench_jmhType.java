@@ -0,0 +1,4 @@
+package pkp.twiddle.jmh_generated;
+public class KeyBench_jmhType extends KeyBench_jmhType_B3 {
+}
+
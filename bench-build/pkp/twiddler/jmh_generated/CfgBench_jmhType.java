@@ -0,0 +1,4 @@
+package pkp.twiddler.jmh_generated;
+public class CfgBench_jmhType extends CfgBench_jmhType_B3 {
+}
+
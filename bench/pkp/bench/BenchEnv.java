@@ -0,0 +1,69 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * BenchEnv.java
+ */
+package pkp.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import pkp.twiddle.KeyPress;
+import pkp.util.Persist;
+import pkp.util.Pref;
+import pkp.util.Log;
+
+///////////////////////////////////////////////////////////////////////////////
+// Sets up what Twidlit.init() does, in a scratch home folder so that
+// benchmarks neither read nor write the user's preferences or times.
+public class BenchEnv {
+
+   ////////////////////////////////////////////////////////////////////////////
+   public static synchronized void init() {
+      if (sm_Home != null) {
+         return;
+      }
+      sm_Home = createTempDir("twidlit-bench");
+      Log.init(false);
+      Persist.init("twidlit.properties", sm_Home.getPath(), "pref");
+      // the preferences in the working folder, as the other mains do
+      Pref.init("twidlit.preferences", "pref", "pref");
+      KeyPress.init();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public static File getHome() {
+      return sm_Home;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // cfg to benchmark with, set -Dbench.cfg=<file> to use another
+   public static File getCfgFile() {
+      return new File(System.getProperty("bench.cfg", "thumbless.cfg.chords"));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public static File createTempDir(String prefix) {
+      try {
+         File dir = Files.createTempDirectory(prefix).toFile();
+         dir.deleteOnExit();
+         return dir;
+      } catch (IOException e) {
+         throw new RuntimeException("Failed to create a temporary folder", e);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public static File createTempFile(String prefix, String suffix) {
+      try {
+         File f = File.createTempFile(prefix, suffix);
+         f.deleteOnExit();
+         return f;
+      } catch (IOException e) {
+         throw new RuntimeException("Failed to create a temporary file", e);
+      }
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static File sm_Home = null;
+}
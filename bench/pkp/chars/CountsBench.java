@@ -0,0 +1,135 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * CountsBench.java
+ */
+package pkp.chars;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import pkp.bench.BenchEnv;
+import pkp.util.Pref;
+
+///////////////////////////////////////////////////////////////////////////////
+// Counts a synthetic corpus of words drawn from a small vocabulary with a
+// Zipf-like skew, some punctuation, and both LF and CRLF line ends.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CountsBench {
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Param({"16"})
+   public int m_CorpusMb;
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Setup
+   public void setup() throws IOException {
+      BenchEnv.init();
+      // time counting, not reading back the counts of the last invocation
+      Pref.set("#.count.cache", "false");
+      m_Corpus = BenchEnv.createTempFile("corpus", ".txt");
+      byte[] text = createText(m_CorpusMb << 20);
+      FileOutputStream fos = new FileOutputStream(m_Corpus);
+      fos.write(text);
+      fos.close();
+      m_Chars = new char[Math.min(text.length, 1 << 20)];
+      for (int i = 0; i < m_Chars.length; ++i) {
+         m_Chars[i] = (char)text[i];
+      }
+      m_NGramsFile = BenchEnv.createTempFile("ngrams", ".txt");
+      PrintWriter pw = new PrintWriter(m_NGramsFile);
+      for (String ng : sm_NGRAMS) {
+         pw.println(ng);
+      }
+      pw.close();
+      m_NGrams = new NGrams(m_NGramsFile);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   public Counts countChars() {
+      Counts c = new Counts(null, 1, Integer.MAX_VALUE);
+      c.count(m_Corpus);
+      return c;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   public Counts countBigramsAndNGrams() {
+      Counts c = new Counts(m_NGramsFile, 1, Integer.MAX_VALUE);
+      c.setShowBigrams(true);
+      c.count(m_Corpus);
+      return c;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // per MB of chars
+   @Benchmark
+   public NGrams nGramsNextChar() {
+      for (int i = 0; i < m_Chars.length; ++i) {
+         m_NGrams.nextChar(m_Chars[i]);
+      }
+      return m_NGrams;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static byte[] createText(int size) {
+      Random r = new Random(1);
+      byte[] text = new byte[size];
+      int i = 0;
+      int words = 0;
+      while (i < size) {
+         // favour the first words
+         int w = (int)(sm_WORDS.length * Math.pow(r.nextDouble(), 3));
+         String word = sm_WORDS[w];
+         for (int j = 0; j < word.length() && i < size; ++j) {
+            text[i++] = (byte)word.charAt(j);
+         }
+         ++words;
+         String sep = " ";
+         if (words % 13 == 0) {
+            sep = ". ";
+         } else if (words % 7 == 0) {
+            sep = ", ";
+         }
+         if (words % 11 == 0) {
+            sep = r.nextBoolean() ? ".\n" : ".\r\n";
+         }
+         for (int j = 0; j < sep.length() && i < size; ++j) {
+            text[i++] = (byte)sep.charAt(j);
+         }
+      }
+      return text;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final String[] sm_WORDS = {
+      "the", "of", "and", "to", "a", "in", "is", "that", "for", "it",
+      "as", "was", "with", "be", "by", "on", "not", "he", "I", "this",
+      "are", "or", "his", "from", "at", "which", "but", "have", "an", "had",
+      "they", "you", "were", "their", "one", "all", "we", "can", "her", "has",
+      "there", "been", "if", "more", "when", "will", "would", "who", "so", "no",
+      "Twiddler", "chord", "thumb", "keystroke", "mapping", "tutor", "speed",
+      "quickly", "jumped", "zebra", "xylophone", "quartz", "judge", "vow"
+   };
+   private static final String[] sm_NGRAMS = {
+      "th", "he", "in", "er", "an", "re", "on", "at", "en", "nd",
+      "the", "and", "ing", "ion", "tio", "ent", "for", "her", "tha", "nth",
+      "ee", "ll", "ss", "e.", "s,", "\\n\\n"
+   };
+   private File m_Corpus;
+   private File m_NGramsFile;
+   private NGrams m_NGrams;
+   private char[] m_Chars;
+}
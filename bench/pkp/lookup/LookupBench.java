@@ -0,0 +1,116 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * LookupBench.java
+ */
+package pkp.lookup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import pkp.bench.BenchEnv;
+
+///////////////////////////////////////////////////////////////////////////////
+// Keyed like KeyMap's keystroke table (key code, modifiers) with some
+// keys outside the dense range to exercise the overflow.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBench {
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Setup
+   public void setup() {
+      BenchEnv.init();
+      Random r = new Random(1);
+      LookupTableBuilder ltb = new LookupTableBuilder(0, sm_DENSE);
+      ltb.setDuplicates(LookupBuilder.Duplicates.STORE);
+      LookupTableBuilder single = new LookupTableBuilder(0, sm_DENSE);
+      m_Dense = new int[sm_KEYS];
+      m_Sparse = new int[sm_KEYS];
+      m_Mods = new int[sm_KEYS];
+      for (int i = 0; i < sm_KEYS; ++i) {
+         m_Dense[i] = r.nextInt(sm_DENSE);
+         m_Sparse[i] = sm_DENSE + 1 + r.nextInt(sm_SPARSE) * 7;
+         m_Mods[i] = r.nextInt(4);
+      }
+      for (int k = 0; k < sm_DENSE; ++k) {
+         single.add(k, k);
+         for (int m = 0; m < 4; ++m) {
+            ltb.add(k, m, k * 4 + m);
+         }
+      }
+      for (int i = 0; i < sm_SPARSE; ++i) {
+         int k = sm_DENSE + 1 + i * 7;
+         single.add(k, i);
+         ltb.add(k, i & 3, i);
+      }
+      m_Single = single.build();
+      m_Table = ltb.build();
+      m_Cursor = new LookupCursor();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   @OperationsPerInvocation(sm_KEYS)
+   public int getDense() {
+      int sum = 0;
+      for (int i = 0; i < sm_KEYS; ++i) {
+         sum += m_Single.get(m_Dense[i]);
+      }
+      return sum;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   @OperationsPerInvocation(sm_KEYS)
+   public int getOverflow() {
+      int sum = 0;
+      for (int i = 0; i < sm_KEYS; ++i) {
+         sum += m_Single.get(m_Sparse[i]);
+      }
+      return sum;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   @OperationsPerInvocation(sm_KEYS)
+   public int getScan() {
+      int sum = 0;
+      for (int i = 0; i < sm_KEYS; ++i) {
+         sum += m_Table.get(m_Dense[i], m_Mods[i]);
+      }
+      return sum;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   @OperationsPerInvocation(sm_KEYS)
+   public int getAll() {
+      int sum = 0;
+      for (int i = 0; i < sm_KEYS; ++i) {
+         int k = (i & 1) == 0 ? m_Dense[i] : m_Sparse[i];
+         if (m_Table.getAll(k, m_Mods[i], m_Cursor)) {
+            while (m_Cursor.next()) {
+               sum += m_Cursor.getValue();
+            }
+         }
+      }
+      return sum;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_KEYS = 1024;
+   // KeyMap's key code range
+   private static final int sm_DENSE = 0x67;
+   private static final int sm_SPARSE = 200;
+   private LookupTable m_Single;
+   private LookupTable m_Table;
+   private LookupCursor m_Cursor;
+   private int[] m_Dense;
+   private int[] m_Sparse;
+   private int[] m_Mods;
+}
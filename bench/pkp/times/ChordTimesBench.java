@@ -0,0 +1,74 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * ChordTimesBench.java
+ */
+package pkp.times;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import pkp.bench.BenchEnv;
+import pkp.twiddle.Chord;
+
+///////////////////////////////////////////////////////////////////////////////
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChordTimesBench {
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Setup
+   public void setup() {
+      BenchEnv.init();
+      // times are loaded from and kept in the scratch home
+      m_Times = new ChordTimes(false, true);
+      Random r = new Random(1);
+      m_Chords = new int[sm_SAMPLES];
+      m_Thumbs = new int[sm_SAMPLES];
+      m_Ms = new int[sm_SAMPLES];
+      for (int i = 0; i < sm_SAMPLES; ++i) {
+         m_Chords[i] = 1 + r.nextInt(Chord.sm_VALUES);
+         m_Thumbs[i] = r.nextInt(4) == 0 ? 1 : 0;
+         m_Ms[i] = 200 + r.nextInt(1500);
+      }
+      // fill every window so means are over full spans
+      for (int i = 0; i < m_Times.getSpan(); ++i) {
+         for (int c = 1; c <= Chord.sm_VALUES; ++c) {
+            m_Times.add(c, 0, m_Ms[(c * 31 + i) % sm_SAMPLES]);
+            m_Times.add(c, 1, m_Ms[(c * 17 + i) % sm_SAMPLES]);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   @OperationsPerInvocation(sm_SAMPLES)
+   public ChordTimes add() {
+      for (int i = 0; i < sm_SAMPLES; ++i) {
+         m_Times.add(m_Chords[i], m_Thumbs[i], m_Ms[i]);
+      }
+      return m_Times;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   @OperationsPerInvocation(Chord.sm_VALUES * 2)
+   public int getMean() {
+      int sum = 0;
+      for (int c = 1; c <= Chord.sm_VALUES; ++c) {
+         sum += m_Times.getMean(c, 0) + m_Times.getMean(c, 1);
+      }
+      return sum;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_SAMPLES = 1024;
+   private ChordTimes m_Times;
+   private int[] m_Chords;
+   private int[] m_Thumbs;
+   private int[] m_Ms;
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * KeyBench.java
+ */
+package pkp.twiddle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import pkp.bench.BenchEnv;
+import pkp.twiddler.Cfg;
+
+///////////////////////////////////////////////////////////////////////////////
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBench {
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Setup
+   public void setup() {
+      BenchEnv.init();
+      Cfg cfg = Cfg.read(BenchEnv.getCfgFile());
+      m_KeyMap = new KeyMap(cfg.getAssignments());
+      KeyPressList kpl = KeyPressList.parseTextAndTags(sm_TEXT);
+      m_Prefixes = new ArrayList<KeyPressList>();
+      for (int i = 0; i < kpl.size(); ++i) {
+         KeyPressList prefix = new KeyPressList();
+         for (int j = i; j < Math.min(i + 4, kpl.size()); ++j) {
+            prefix.add(kpl.get(j));
+         }
+         m_Prefixes.add(prefix);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   public KeyPressList parseTextAndTags() {
+      return KeyPressList.parseTextAndTags(sm_TEXT);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // one lookup per keystroke of sm_TEXT
+   @Benchmark
+   public int findLongestPrefix() {
+      int found = 0;
+      for (KeyPressList kpl : m_Prefixes) {
+         if (m_KeyMap.findLongestPrefix(kpl) != null) {
+            ++found;
+         }
+      }
+      return found;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final String sm_TEXT =
+        "The quick brown fox jumps over the lazy dog.<Enter>"
+      + "Pack my box with five dozen liquor jugs,<Backspace> then stop.<Enter>"
+      + "Sphinx of black quartz, judge my vow; 0123456789 (twice).<Enter>";
+   private KeyMap m_KeyMap;
+   private List<KeyPressList> m_Prefixes;
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * CfgBench.java
+ */
+package pkp.twiddler;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import pkp.bench.BenchEnv;
+
+///////////////////////////////////////////////////////////////////////////////
+// Reads and writes the binary cfg in the v4 (version 2) and v5 (version 3)
+// formats.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CfgBench {
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Param({"4", "5"})
+   public int m_Format;
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Setup
+   public void setup() {
+      BenchEnv.init();
+      m_Cfg = Cfg.read(BenchEnv.getCfgFile());
+      m_Version = m_Format == 5 ? 3 : 2;
+      m_ReadFile = BenchEnv.createTempFile("read", ".cfg");
+      m_WriteFile = BenchEnv.createTempFile("write", ".cfg");
+      m_Cfg.write(m_ReadFile, m_Version);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   public Cfg read() {
+      return Cfg.read(m_ReadFile);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Benchmark
+   public void write() {
+      m_Cfg.write(m_WriteFile, m_Version);
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private Cfg m_Cfg;
+   private int m_Version;
+   private File m_ReadFile;
+   private File m_WriteFile;
+}
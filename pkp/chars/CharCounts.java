@@ -10,6 +10,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import pkp.io.Io;
 import pkp.io.CrLf;
 import pkp.lookup.SharedIndexableInts;
@@ -17,6 +18,11 @@ import pkp.util.Pref;
 import pkp.util.Log;
 
 ////////////////////////////////////////////////////////////////////////////////
+// Counts of code points and, optionally, of pairs of them. Ascii, and pairs
+// of ascii, are counted in an array. Everything else is counted in a sparse
+// table, so memory grows with the different chars seen rather than with the
+// size of unicode. Indexes past the ascii ones are those of the table's
+// occupied slots of chars, or of pairs for the bigram view.
 class CharCounts implements SharedIndexableInts {
    
    ////////////////////////////////////////////////////////////////////////////
@@ -25,9 +31,12 @@ class CharCounts implements SharedIndexableInts {
    ////////////////////////////////////////////////////////////////////////////
    CharCounts(boolean bigrams) {
       m_MAX_REPEAT = Pref.getInt("#.count.repeats.max", 2);
-      m_Counts = new int[bigrams
+      m_Counts = new long[bigrams
                          ? (sm_CHARS + 1) * sm_CHARS
                          : sm_CHARS];
+      m_Others = new SparseCounts();
+      m_CharSlots = null;
+      m_BigramSlots = null;
       m_CrLf = new CrLf();
       m_Repeat = 0;
       m_Bigrams = bigrams;
@@ -41,24 +50,28 @@ class CharCounts implements SharedIndexableInts {
    ////////////////////////////////////////////////////////////////////////////
    @Override // SharedIndexableInts
    public int getSize() {
-      return sm_CHARS;
+      return sm_CHARS + getCharSlots().length;
    }
 
    ////////////////////////////////////////////////////////////////////////////
    @Override // SharedIndexableInts
-   public int getCount(int i) {
-      return m_Counts[i];
+   public long getCount(int i) {
+      if (i < sm_CHARS) {
+         return m_Counts[i];
+      }
+      return m_Others.getSlotCount(getCharSlots()[i - sm_CHARS]);
    }
 
    ////////////////////////////////////////////////////////////////////////////
    @Override // SharedIndexableInts
    public String getLabel(int i) {
-      return Io.toEscapeCharCommented((char)i);
+      return toLabel(i < sm_CHARS ? i : (int)m_Others.getKey(getCharSlots()[i - sm_CHARS]));
    }
 
    ////////////////////////////////////////////////////////////////////////////
-   public void nextChar(char c) {
-      char prev = m_CrLf.getPrev();
+   // c is a code point.
+   public void nextChar(int c) {
+      int prev = m_CrLf.getPrev();
       c = m_CrLf.next(c);
       if (c == '\0') {
          return;
@@ -72,11 +85,95 @@ class CharCounts implements SharedIndexableInts {
             return;
          }
       }
-      ++m_Counts[c];
+      if (c < sm_CHARS) {
+         ++m_Counts[c];
+      } else {
+         m_Others.add(c, 1);
+         changedOthers();
+      }
       if (m_Bigrams && prev != 0) {
-         ++m_Counts[combine(prev, c)];
+         if (c < sm_CHARS && prev < sm_CHARS) {
+            ++m_Counts[combine(prev, c)];
 //System.out.printf("\"%c%c\" combine(prev, c) %5d m_Counts[combine(prev, c)] %3d%n", prev, c, combine(prev, c), m_Counts[combine(prev, c)]);               
+         } else {
+            m_Others.add(toBigramKey(prev, c), 1);
+            changedOthers();
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   long getCharCount(int c) {
+      return c < sm_CHARS ? m_Counts[c] : m_Others.getCount(c);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   long getBigramCount(int first, int second) {
+      if (!m_Bigrams) {
+         return 0;
+      }
+      return first < sm_CHARS && second < sm_CHARS
+             ? m_Counts[combine(first, second)]
+             : m_Others.getCount(toBigramKey(first, second));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void add(CharCounts other) {
+      for (int i = 0; i < m_Counts.length; ++i) {
+         m_Counts[i] += other.m_Counts[i];
+      }
+      m_Others.add(other.m_Others);
+      changedOthers();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void subtract(CharCounts other) {
+      for (int i = 0; i < m_Counts.length; ++i) {
+         m_Counts[i] -= other.m_Counts[i];
+      }
+      m_Others.subtract(other.m_Others);
+      changedOthers();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether both will count whatever comes next the same way.
+   boolean isSameState(CharCounts other) {
+      return m_CrLf.isSameState(other.m_CrLf)
+          && getRepeatState() == other.getRepeatState();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void setState(CharCounts other) {
+      m_CrLf = new CrLf(other.m_CrLf);
+      m_Repeat = other.m_Repeat;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The counts and state, for reading into an empty CharCounts.
+   void write(ByteBuffer bb) {
+      SparseCounts.write(bb, m_Counts);
+      m_Others.write(bb);
+      m_CrLf.write(bb);
+      bb.putInt(m_Repeat);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int writeSize() {
+      return SparseCounts.writeSize(m_Counts) + m_Others.writeSize() + CrLf.writeSize() + 4;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds the counts write() wrote and takes its state. Returns false if
+   // they don't fit.
+   boolean read(ByteBuffer bb) {
+      if (!SparseCounts.read(bb, m_Counts)) {
+         return false;
       }
+      m_Others.read(bb);
+      changedOthers();
+      m_CrLf = new CrLf(bb);
+      m_Repeat = bb.getInt();
+      return true;
    }
 
    /////////////////////////////////////////////////////////////////////////////
@@ -85,19 +182,29 @@ class CharCounts implements SharedIndexableInts {
       /////////////////////////////////////////////////////////////////////////
       @Override // SharedIndexableInts
       public int getSize() {
-         return m_Counts.length - sm_CHARS;
+         return m_Counts.length - sm_CHARS + getBigramSlots().length;
       }
 
       /////////////////////////////////////////////////////////////////////////
       @Override // SharedIndexableInts
-      public int getCount(int i) {
-         return m_Counts[i + sm_CHARS];
+      public long getCount(int i) {
+         int slot = i - (m_Counts.length - sm_CHARS);
+         if (slot < 0) {
+            return m_Counts[i + sm_CHARS];
+         }
+         return m_Others.getSlotCount(getBigramSlots()[slot]);
       }
 
       /////////////////////////////////////////////////////////////////////////
       @Override // SharedIndexableInts
       public String getLabel(int i) {
-         return Io.toEscapeCharCommented((char)(i / sm_CHARS)) + Io.toEscapeCharCommented((char)(i % sm_CHARS));
+         int slot = i - (m_Counts.length - sm_CHARS);
+         if (slot < 0) {
+            return toLabel(i / sm_CHARS) + toLabel(i % sm_CHARS);
+         }
+         long key = m_Others.getKey(getBigramSlots()[slot]);
+         return toLabel((int)(key >>> sm_CODE_POINT_BITS) - 1)
+              + toLabel((int)(key & Character.MAX_CODE_POINT));
       }
    }
    
@@ -107,10 +214,75 @@ class CharCounts implements SharedIndexableInts {
    private static int combine(int first, int second) {
       return (first + 1) * sm_CHARS + second;   
    }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Above any code point, so bigrams and chars share m_Others.
+   private static long toBigramKey(int first, int second) {
+      return ((long)(first + 1) << sm_CODE_POINT_BITS) | second;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static String toLabel(int c) {
+      return c < sm_CHARS
+             ? Io.toEscapeCharCommented((char)c)
+             : new String(Character.toChars(c));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The slots moved when m_Others was changed, so they are found again.
+   private void changedOthers() {
+      m_CharSlots = null;
+      m_BigramSlots = null;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The occupied slots of m_Others holding chars.
+   private int[] getCharSlots() {
+      if (m_CharSlots == null) {
+         m_CharSlots = findSlots(false);
+      }
+      return m_CharSlots;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The occupied slots of m_Others holding bigrams.
+   private int[] getBigramSlots() {
+      if (m_BigramSlots == null) {
+         m_BigramSlots = findSlots(true);
+      }
+      return m_BigramSlots;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private int[] findSlots(boolean bigrams) {
+      int[] slots = new int[m_Others.size()];
+      int n = 0;
+      for (int s = 0; s < m_Others.getSlots(); ++s) {
+         long key = m_Others.getKey(s);
+         if (key != 0 && (key > Character.MAX_CODE_POINT) == bigrams) {
+            slots[n++] = s;
+         }
+      }
+      return Arrays.copyOf(slots, n);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // all repeats at or beyond the one before the max are ignored alike
+   private int getRepeatState() {
+      return Math.min(m_Repeat, Math.max(m_MAX_REPEAT - 1, 0));
+   }
    
    // Data ////////////////////////////////////////////////////////////////////
+   // bits to hold any code point
+   private static final int sm_CODE_POINT_BITS = 21;
    private static int m_MAX_REPEAT;
-   private int[] m_Counts;
+   // ascii, then ascii pairs
+   private long[] m_Counts;
+   // the rest, keyed by code point or toBigramKey()
+   private SparseCounts m_Others;
+   // m_Others's slots of each kind, found when needed
+   private int[] m_CharSlots;
+   private int[] m_BigramSlots;
    private CrLf m_CrLf;
    private int m_Repeat;
    private boolean m_Bigrams;
@@ -0,0 +1,346 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * ChordUsage.java
+ */
+package pkp.chars;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import pkp.twiddle.Assignment;
+import pkp.twiddle.Chord;
+import pkp.twiddle.KeyMap;
+import pkp.twiddle.KeyPress;
+import pkp.twiddle.KeyPressList;
+import pkp.twiddle.ThumbKeys;
+import pkp.twiddle.Twiddle;
+import pkp.io.Io;
+import pkp.util.IndexSort;
+import pkp.util.Log;
+
+////////////////////////////////////////////////////////////////////////////////
+// How often each twiddle of a keymap is pressed, and how often each chord
+// follows another, when typing a corpus with it. The text is matched a
+// keystroke at a time with the longest assignment that starts there, as the
+// tutor does, holding only as many keystrokes as the longest assignment.
+// Files are counted in parallel and their counts added.
+public class ChordUsage {
+
+   ////////////////////////////////////////////////////////////////////////////
+   public ChordUsage(KeyMap km) {
+      this(km, createKeyPresses(), true);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds the counts of the files.
+   public void count(List<File> files) {
+      if (!files.isEmpty()) {
+         add(ForkJoinPool.commonPool().invoke(new CountFiles(this, files, 0, files.size())));
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public void add(ChordUsage other) {
+      for (int i = 0; i < m_Usage.length; ++i) {
+         m_Usage[i] += other.m_Usage[i];
+      }
+      if (m_Transitions != null) {
+         for (int i = 0; i < m_Transitions.length; ++i) {
+            m_Transitions[i] += other.m_Transitions[i];
+         }
+      }
+      m_Unmapped += other.m_Unmapped;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public long getCount(Twiddle tw) {
+      int i = toIndex(tw);
+      return i < 0 ? 0 : m_Usage[i];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   long getCount(int chord, int thumbKeys) {
+      return m_Usage[thumbKeys * sm_CHORDS + chord];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public long getTransitionCount(Chord from, Chord to) {
+      if (m_Transitions == null || !from.isChord() || !to.isChord()) {
+         return 0;
+      }
+      return m_Transitions[from.toInt() * sm_CHORDS + to.toInt()];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Keystrokes that no assignment starts with.
+   public long getUnmapped() {
+      return m_Unmapped;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Each twiddle pressed and how often, most often first. Without thumbs
+   // the table lists only chords without thumb keys, one per line followed
+   // by its count, like a chords file.
+   public String table(boolean showThumbs) {
+      int[] index = IndexSort.sort(m_Usage, false);
+      StringBuilder str = new StringBuilder();
+      for (int i : index) {
+         if (m_Usage[i] == 0) {
+            break;
+         }
+         Twiddle tw = Twiddle.fromChordValue(i % sm_CHORDS, i / sm_CHORDS);
+         if (tw.getThumbKeys().isEmpty()) {
+            str.append(String.format("%s %d%n", tw.getChord(), m_Usage[i]));
+         } else if (showThumbs) {
+            str.append(String.format("%s %d%n", tw, m_Usage[i]));
+         }
+      }
+      return str.toString();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Each pair of consecutive chords with at least lowest transitions and
+   // how often, most often first.
+   public String transitionTable(int lowest) {
+      if (m_Transitions == null) {
+         return "";
+      }
+      int[] index = IndexSort.sort(m_Transitions, false);
+      StringBuilder str = new StringBuilder();
+      for (int i : index) {
+         if (m_Transitions[i] < Math.max(lowest, 1)) {
+            break;
+         }
+         str.append(String.format("%s %s %d%n",
+                                  Chord.fromChordValue(i / sm_CHORDS),
+                                  Chord.fromChordValue(i % sm_CHORDS),
+                                  m_Transitions[i]));
+      }
+      return str.toString();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts into usage only if not transitions. keyPresses is from
+   // createKeyPresses() and may be shared.
+   ChordUsage(KeyMap km, KeyPress[] keyPresses, boolean transitions) {
+      m_KeyMap = km;
+      m_Usage = new long[sm_TWIDDLES];
+      m_Transitions = transitions ? new long[sm_CHORDS * sm_CHORDS] : null;
+      m_KeyPresses = keyPresses;
+      m_Depth = 1;
+      for (Assignment asg : km.getAssignments()) {
+         m_Depth = Math.max(m_Depth, asg.getKeyPressList().size());
+      }
+      m_Keys = new KeyPressList();
+      m_Previous = -1;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // ascii to keypress, or null if it has none
+   static KeyPress[] createKeyPresses() {
+      KeyPress[] kps = new KeyPress[128];
+      StringBuilder err = new StringBuilder();
+      for (char c = 0; c < kps.length; ++c) {
+         KeyPressList kpl = KeyPressList.parseText(String.valueOf(c), err);
+         kps[c] = kpl.size() == 1 ? kpl.get(0) : null;
+      }
+      return kps;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Puts the keypresses of the first n bytes of buf in keys, with null for
+   // a byte that has none, and returns how many.
+   static int decode(byte[] buf, int n, KeyPress[] keyPresses, KeyPress[] keys) {
+      int k = 0;
+      for (int i = 0; i < n; ++i) {
+         int c = buf[i] & 0xFF;
+         // line ends are counted once, as '\n'
+         if (c != '\r') {
+            keys[k++] = c < keyPresses.length ? keyPresses[c] : null;
+         }
+      }
+      return k;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the first n keys, which follow those counted since endText().
+   // A null key is a gap in what can be typed.
+   void count(KeyPress[] keys, int n) {
+      for (int i = 0; i < n; ++i) {
+         KeyPress kp = keys[i];
+         if (kp == null) {
+            match(m_Keys.size());
+            ++m_Unmapped;
+            m_Previous = -1;
+         } else {
+            m_Keys.add(kp);
+            // the longest match needs m_Depth keys
+            match(m_Keys.size() - m_Depth + 1);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the keys held, as the text has ended.
+   void endText() {
+      while (m_Start < m_Keys.size()) {
+         match();
+      }
+      m_Keys = new KeyPressList();
+      m_Start = 0;
+      m_Previous = -1;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Takes the keys of a file a buffer at a time.
+   interface Reader {
+      void read(KeyPress[] keys, int n);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Passes the keys of f, expanded if compressed, to reader, and returns
+   // false if reading fails.
+   static boolean read(File f, KeyPress[] keyPresses, Reader reader) {
+      InputStream in = null;
+      try {
+         in = Io.openInputStream(f);
+         byte[] buf = new byte[sm_BUFFER_SIZE];
+         KeyPress[] keys = new KeyPress[sm_BUFFER_SIZE];
+         for (int n; (n = in.read(buf)) >= 0;) {
+            reader.read(keys, decode(buf, n, keyPresses, keys));
+         }
+      } catch (IOException e) {
+         Log.err("Failed to read \"" + f.getPath() + "\": " + e);
+         return false;
+      } finally {
+         if (in != null) {
+            try {
+               in.close();
+            } catch (IOException e) {}
+         }
+      }
+      return true;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts f from the start of a line.
+   private void countFile(File f) {
+      read(f, m_KeyPresses, new Reader() {
+         public void read(KeyPress[] keys, int n) {
+            count(keys, n);
+         }
+      });
+      endText();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Matches the keys before end.
+   private void match(int end) {
+      while (m_Start < end) {
+         match();
+      }
+      if (m_Start >= sm_COMPACT_KEYS) {
+         m_Keys = m_Keys.sublist(m_Start);
+         m_Start = 0;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Matches the longest assignment at m_Start and moves past it.
+   private void match() {
+      Assignment asg = m_Keys.findLongestPrefix(m_KeyMap, m_Start);
+      if (asg == null) {
+         ++m_Unmapped;
+         ++m_Start;
+         m_Previous = -1;
+         return;
+      }
+      m_Start += asg.getKeyPressList().size();
+      Twiddle tw = asg.getBestTwiddle();
+      int i = toIndex(tw);
+      if (i < 0) {
+         m_Previous = -1;
+         return;
+      }
+      ++m_Usage[i];
+      int chord = tw.getChord().toInt();
+      if (m_Previous >= 0 && m_Transitions != null) {
+         ++m_Transitions[m_Previous * sm_CHORDS + chord];
+      }
+      m_Previous = chord;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // -1 for mouse buttons
+   private static int toIndex(Twiddle tw) {
+      int thumbs = tw.getThumbKeys().toInt();
+      if (!tw.getChord().isChord() || thumbs < 0 || thumbs > ThumbKeys.sm_VALUES) {
+         return -1;
+      }
+      return thumbs * sm_CHORDS + tw.getChord().toInt();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Splits the files in half until there is one to count, then adds the
+   // halves.
+   @SuppressWarnings("serial") // never serialized
+   private static class CountFiles extends RecursiveTask<ChordUsage> {
+
+      /////////////////////////////////////////////////////////////////////////
+      CountFiles(ChordUsage like, List<File> files, int first, int last) {
+         m_Like = like;
+         m_Files = files;
+         m_First = first;
+         m_Last = last;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      protected ChordUsage compute() {
+         if (m_Last - m_First == 1) {
+            ChordUsage cu = new ChordUsage(m_Like.m_KeyMap, m_Like.m_KeyPresses, m_Like.m_Transitions != null);
+            cu.countFile(m_Files.get(m_First));
+            return cu;
+         }
+         int mid = (m_First + m_Last) / 2;
+         CountFiles first = new CountFiles(m_Like, m_Files, m_First, mid);
+         first.fork();
+         ChordUsage cu = (new CountFiles(m_Like, m_Files, mid, m_Last)).compute();
+         cu.add(first.join());
+         return cu;
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final ChordUsage m_Like;
+      private final List<File> m_Files;
+      private final int m_First;
+      private final int m_Last;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_CHORDS = Chord.sm_VALUES + 1;
+   private static final int sm_TWIDDLES = sm_CHORDS * (ThumbKeys.sm_VALUES + 1);
+   private static final int sm_BUFFER_SIZE = 1 << 16;
+   // matched keys kept before they are dropped
+   private static final int sm_COMPACT_KEYS = 1 << 12;
+   private final KeyMap m_KeyMap;
+   // twiddle (thumbs * sm_CHORDS + chord) to count
+   private final long[] m_Usage;
+   // from * sm_CHORDS + to chord to count
+   private final long[] m_Transitions;
+   // ascii to keypress or null
+   private final KeyPress[] m_KeyPresses;
+   // keys in the longest assignment
+   private int m_Depth;
+   private long m_Unmapped;
+   // keys read and not yet all matched, from m_Start on
+   private KeyPressList m_Keys;
+   private int m_Start;
+   private int m_Previous;
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * CountCache.java
+ */
+package pkp.chars;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import pkp.io.Io;
+import pkp.util.Log;
+
+////////////////////////////////////////////////////////////////////////////////
+// The counts of each file counted, kept between runs so that a file whose
+// size and modification time are unchanged need not be read again. Counts
+// are only good for the settings they were counted with, so the cache is
+// discarded when the signature of those settings changes.
+class CountCache {
+
+   ////////////////////////////////////////////////////////////////////////////
+   CountCache(File f, String signature) {
+      m_File = f;
+      m_Signature = signature;
+      m_Entries = new LinkedHashMap<String, Entry>();
+      m_Changed = false;
+      read();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The counts written for f, or null if there are none or f has changed
+   // since.
+   synchronized ByteBuffer get(File f) {
+      Entry e = m_Entries.get(f.getAbsolutePath());
+      if (e == null || e.m_Length != f.length() || e.m_Modified != f.lastModified()) {
+         return null;
+      }
+      return ByteBuffer.wrap(e.m_Data);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Keeps the counts of f, which had length and modified when counted.
+   synchronized void put(File f, long length, long modified, PartialCounts pc) {
+      byte[] data = new byte[pc.writeSize()];
+      pc.write(ByteBuffer.wrap(data));
+      m_Entries.put(f.getAbsolutePath(), new Entry(length, modified, data));
+      m_Changed = true;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Drops the counts of f, which did not read back.
+   synchronized void remove(File f) {
+      if (m_Entries.remove(f.getAbsolutePath()) != null) {
+         m_Changed = true;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Writes the cache if it has changed, less the files that are gone.
+   void write() {
+      Iterator<String> it = m_Entries.keySet().iterator();
+      while (it.hasNext()) {
+         if (!(new File(it.next())).isFile()) {
+            it.remove();
+            m_Changed = true;
+         }
+      }
+      if (!m_Changed) {
+         return;
+      }
+      int size = 8 + writeSize(m_Signature);
+      for (Map.Entry<String, Entry> me : m_Entries.entrySet()) {
+         size += writeSize(me.getKey()) + 20 + me.getValue().m_Data.length;
+      }
+      byte[] data = new byte[size];
+      ByteBuffer bb = ByteBuffer.wrap(data);
+      bb.putInt(sm_MAGIC);
+      write(bb, m_Signature);
+      bb.putInt(m_Entries.size());
+      for (Map.Entry<String, Entry> me : m_Entries.entrySet()) {
+         Entry e = me.getValue();
+         write(bb, me.getKey());
+         bb.putLong(e.m_Length);
+         bb.putLong(e.m_Modified);
+         bb.putInt(e.m_Data.length);
+         bb.put(e.m_Data);
+      }
+      if (Io.replace(m_File, data, data.length)) {
+         m_Changed = false;
+      }
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static class Entry {
+
+      /////////////////////////////////////////////////////////////////////////
+      Entry(long length, long modified, byte[] data) {
+         m_Length = length;
+         m_Modified = modified;
+         m_Data = data;
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final long m_Length;
+      private final long m_Modified;
+      private final byte[] m_Data;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void read() {
+      if (!m_File.isFile()) {
+         return;
+      }
+      byte[] data;
+      try {
+         data = Files.readAllBytes(m_File.toPath());
+      } catch (IOException e) {
+         Log.warn("Failed to read \"" + m_File.getPath() + "\".");
+         return;
+      }
+      ByteBuffer bb = ByteBuffer.wrap(data);
+      try {
+         if (bb.getInt() != sm_MAGIC
+          || !m_Signature.equals(readString(bb))) {
+            // counted some other way
+            m_Changed = true;
+            return;
+         }
+         int entries = bb.getInt();
+         for (int i = 0; i < entries; ++i) {
+            String path = readString(bb);
+            long length = bb.getLong();
+            long modified = bb.getLong();
+            byte[] counts = readBytes(bb);
+            m_Entries.put(path, new Entry(length, modified, counts));
+         }
+      } catch (BufferUnderflowException e) {
+         Log.log("Ignored truncated count cache \"" + m_File.getPath() + "\".");
+         m_Entries.clear();
+         m_Changed = true;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static int writeSize(String str) {
+      return 4 + str.getBytes(StandardCharsets.UTF_8).length;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static void write(ByteBuffer bb, String str) {
+      byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+      bb.putInt(bytes.length);
+      bb.put(bytes);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static String readString(ByteBuffer bb) {
+      return new String(readBytes(bb), StandardCharsets.UTF_8);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // A length then that many bytes.
+   private static byte[] readBytes(ByteBuffer bb) {
+      int length = bb.getInt();
+      if (length < 0 || length > bb.remaining()) {
+         throw new BufferUnderflowException();
+      }
+      byte[] bytes = new byte[length];
+      bb.get(bytes);
+      return bytes;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_MAGIC = 0x54574343;
+   private final File m_File;
+   private final String m_Signature;
+   private final Map<String, Entry> m_Entries;
+   private boolean m_Changed;
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * CountWatcher.java
+ */
+package pkp.chars;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import pkp.io.Io;
+import pkp.util.Pref;
+import pkp.util.Log;
+
+////////////////////////////////////////////////////////////////////////////////
+// Keeps counts up to date with a folder tree that is being written to. Each
+// file has an offset up to which it has been counted, so only what is
+// appended is read. Files that shrink are counted again from the start.
+// Compressed files are counted whole once they have not changed for a
+// refresh period, and in place of what they counted before if they change
+// again.
+// The listener is given a snapshot of the counts at most once a refresh
+// period, and once more after the last change.
+class CountWatcher extends Thread {
+
+   ////////////////////////////////////////////////////////////////////////////
+   CountWatcher(Counts counts, File dir, Counts.Listener listener) {
+      super("CountWatcher");
+      setDaemon(true);
+      m_REFRESH_MSEC = Math.max(50, Pref.getInt("#.count.watch.refresh.msec", 1000));
+      m_Counts = counts;
+      m_Dir = dir.getAbsoluteFile();
+      m_Listener = listener;
+      m_Offsets = new HashMap<File, Long>();
+      m_Decoders = new HashMap<File, Utf8Decoder>();
+      m_Changed = new LinkedHashSet<File>();
+      m_Counted = new HashMap<File, Stamp>();
+      m_Settling = new HashMap<File, Stamp>();
+      m_CompressedCounts = new HashMap<File, PartialCounts>();
+      m_Keys = new HashMap<WatchKey, Path>();
+      try {
+         m_WatchService = FileSystems.getDefault().newWatchService();
+      } catch (IOException e) {
+         Log.warn("Failed to watch \"" + dir.getPath() + "\": " + e);
+         m_WatchService = null;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Stops watching, the thread ends soon after.
+   void close() {
+      if (m_WatchService != null) {
+         try {
+            m_WatchService.close();
+         } catch (IOException e) {
+            Log.warn("Failed to stop watching \"" + m_Dir.getPath() + "\".");
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public void run() {
+      if (m_WatchService == null) {
+         return;
+      }
+      // register first so nothing written while counting is missed
+      register(m_Dir);
+      List<File> files = new ArrayList<File>();
+      List<File> compressed = new ArrayList<File>();
+      for (File f : Io.listAllFilesInTree(m_Dir)) {
+         (Io.isCompressed(f.getName()) ? compressed : files).add(f);
+      }
+      Map<File, Long> ends = new HashMap<File, Long>();
+      m_Counts.count(files, null, ends);
+      m_Offsets.putAll(ends);
+      for (File f : compressed) {
+         countCompressed(f, new Stamp(f));
+      }
+      m_Listener.countsChanged(m_Counts.snapshot());
+      long published = System.currentTimeMillis();
+      boolean unpublished = false;
+      try {
+         for (;;) {
+            long wait = unpublished
+                        ? Math.max(1, published + m_REFRESH_MSEC - System.currentTimeMillis())
+                        : Long.MAX_VALUE;
+            if (!m_Settling.isEmpty()) {
+               wait = Math.min(wait, m_REFRESH_MSEC);
+            }
+            WatchKey key = m_WatchService.poll(wait, TimeUnit.MILLISECONDS);
+            if (key != null) {
+               handle(key);
+               unpublished |= appendChanged();
+            }
+            unpublished |= countSettled();
+            if (unpublished && System.currentTimeMillis() - published >= m_REFRESH_MSEC) {
+               m_Listener.countsChanged(m_Counts.snapshot());
+               published = System.currentTimeMillis();
+               unpublished = false;
+            }
+         }
+      } catch (ClosedWatchServiceException e) {
+         // close() was called
+      } catch (InterruptedException e) {
+         Log.log("Stopped watching \"" + m_Dir.getPath() + "\".");
+      }
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Watches dir and the folders in it.
+   private void register(File dir) {
+      try {
+         Path p = dir.toPath();
+         m_Keys.put(p.register(m_WatchService,
+                               StandardWatchEventKinds.ENTRY_CREATE,
+                               StandardWatchEventKinds.ENTRY_MODIFY,
+                               StandardWatchEventKinds.ENTRY_DELETE),
+                    p);
+      } catch (IOException e) {
+         Log.warn("Failed to watch \"" + dir.getPath() + "\": " + e);
+         return;
+      }
+      File[] files = dir.listFiles();
+      if (files != null) {
+         for (File f : files) {
+            if (f.isDirectory()) {
+               register(f);
+            }
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Notes the files the events of key, and any more pending, are about.
+   private void handle(WatchKey key) {
+      for (; key != null; key = m_WatchService.poll()) {
+         Path dir = m_Keys.get(key);
+         for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+               // events were lost, look at everything
+               m_Changed.addAll(Io.listAllFilesInTree(m_Dir));
+               continue;
+            }
+            if (dir == null) {
+               continue;
+            }
+            File f = dir.resolve((Path)event.context()).toFile();
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+               m_Offsets.remove(f);
+               m_Decoders.remove(f);
+               m_Changed.remove(f);
+               // what it counted stays, to be replaced if it comes back
+               m_Counted.remove(f);
+               m_Settling.remove(f);
+            } else if (f.isDirectory()) {
+               if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                  register(f);
+                  m_Changed.addAll(Io.listAllFilesInTree(f));
+               }
+            } else {
+               m_Changed.add(f);
+            }
+         }
+         if (!key.reset()) {
+            m_Keys.remove(key);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts what the changed files have gained. Returns whether there was
+   // anything.
+   private boolean appendChanged() {
+      boolean counted = false;
+      List<File> changed = new ArrayList<File>(m_Changed);
+      m_Changed.clear();
+      for (File f : changed) {
+         if (!f.isFile()) {
+            continue;
+         }
+         if (Io.isCompressed(f.getName())) {
+            // may still be being written, wait until it settles
+            Stamp stamp = new Stamp(f);
+            Stamp settling = m_Settling.get(f);
+            if (!stamp.isSame(m_Counted.get(f)) && !stamp.isSame(settling)) {
+               m_Settling.put(f, stamp);
+            }
+            continue;
+         }
+         Long offset = m_Offsets.get(f);
+         long start = offset == null ? 0 : offset;
+         if (f.length() < start) {
+            // overwritten, count it afresh
+            start = 0;
+            m_Decoders.remove(f);
+         }
+         if (f.length() == start) {
+            continue;
+         }
+         Utf8Decoder decoder = m_Decoders.get(f);
+         if (decoder == null) {
+            decoder = new Utf8Decoder();
+            m_Decoders.put(f, decoder);
+         }
+         long end = m_Counts.append(f, start, decoder);
+         m_Offsets.put(f, end);
+         counted |= end != start;
+      }
+      return counted;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the compressed files that have not changed for a refresh period.
+   // Returns whether there were any.
+   private boolean countSettled() {
+      boolean counted = false;
+      long now = System.currentTimeMillis();
+      Iterator<Map.Entry<File, Stamp>> it = m_Settling.entrySet().iterator();
+      while (it.hasNext()) {
+         Map.Entry<File, Stamp> e = it.next();
+         File f = e.getKey();
+         Stamp stamp = new Stamp(f);
+         if (!f.isFile()) {
+            it.remove();
+         } else if (!stamp.isSame(e.getValue())) {
+            e.setValue(stamp);
+         } else if (now - e.getValue().m_Seen >= m_REFRESH_MSEC) {
+            it.remove();
+            countCompressed(f, stamp);
+            counted = true;
+         }
+      }
+      return counted;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts f, which was as stamp, in place of whatever it counted before.
+   private void countCompressed(File f, Stamp stamp) {
+      m_CompressedCounts.put(f, m_Counts.recount(f, m_CompressedCounts.get(f)));
+      m_Counted.put(f, stamp);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The size and modification time of a file, and when they were seen.
+   private static class Stamp {
+
+      /////////////////////////////////////////////////////////////////////////
+      Stamp(File f) {
+         m_Length = f.length();
+         m_Modified = f.lastModified();
+         m_Seen = System.currentTimeMillis();
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      boolean isSame(Stamp other) {
+         return other != null
+             && m_Length == other.m_Length
+             && m_Modified == other.m_Modified;
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final long m_Length;
+      private final long m_Modified;
+      private final long m_Seen;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private final int m_REFRESH_MSEC;
+   private final Counts m_Counts;
+   private final File m_Dir;
+   private final Counts.Listener m_Listener;
+   private WatchService m_WatchService;
+   // how far each file has been counted
+   private final Map<File, Long> m_Offsets;
+   // the state of a sequence cut short by the end of a file
+   private final Map<File, Utf8Decoder> m_Decoders;
+   private final Set<File> m_Changed;
+   // the compressed files as they were counted, and what they counted
+   private final Map<File, Stamp> m_Counted;
+   private final Map<File, PartialCounts> m_CompressedCounts;
+   // compressed files that have changed since, and when they last did
+   private final Map<File, Stamp> m_Settling;
+   private final Map<WatchKey, Path> m_Keys;
+}
@@ -6,12 +6,17 @@
 package pkp.chars;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
 import pkp.io.Io;
 import pkp.twiddle.KeyPress;
@@ -19,14 +24,28 @@ import pkp.lookup.SharedIndex;
 import pkp.lookup.SharedIndexableInts;
 import pkp.ui.ProgressWindow;
 import pkp.util.Log;
+import pkp.util.Persist;
+import pkp.util.Pref;
 
 ////////////////////////////////////////////////////////////////////////////////
 public class Counts {
    
    ////////////////////////////////////////////////////////////////////////////
-   public Counts(File f, int lowest, int highest) {
+   // Told of changes to counts that are being watched.
+   public interface Listener {
+      // Called no more often than the watch refresh rate with a copy of the
+      // counts that does not change.
+      public void countsChanged(Counts snapshot);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public Counts(File f, long lowest, long highest) {
+      m_Watcher = null;
       m_File = f;
       m_NGrams = null;
+      m_FrequentNGrams = null;
+      m_FrequentLength = 0;
+      m_FrequentTop = 0;
       m_CharCounts = null;
       m_Index = null;
       m_LowestCount = lowest;
@@ -36,9 +55,13 @@ public class Counts {
    
    ////////////////////////////////////////////////////////////////////////////
    public Counts(Counts other) {
+      m_Watcher = null;
       m_File = other.m_File;
       m_CharCounts = other.m_CharCounts;
       m_NGrams = other.m_NGrams;
+      m_FrequentNGrams = other.m_FrequentNGrams;
+      m_FrequentLength = other.m_FrequentLength;
+      m_FrequentTop = other.m_FrequentTop;
       m_Index = other.m_Index;
       m_LowestCount = other.m_LowestCount;
       m_HighestCount = other.m_HighestCount;
@@ -53,6 +76,7 @@ public class Counts {
       m_ShowBigrams = set;
       m_CharCounts = null;
       m_NGrams = null;
+      m_FrequentNGrams = null;
       return true;
    }
 
@@ -64,11 +88,30 @@ public class Counts {
       m_CharCounts = null;
       m_File = f;
       m_NGrams = null;
+      m_FrequentNGrams = null;
       return true;
    }
 
    ////////////////////////////////////////////////////////////////////////////
-   public void setBounds(int lowest, int highest) {
+   // Approximately counts every ngram up to maxLength long and shows the
+   // top most frequent. A maxLength below 2 turns it off.
+   public boolean setFrequentNGrams(int maxLength, int top) {
+      if (maxLength < 2) {
+         maxLength = 0;
+      }
+      if (maxLength == m_FrequentLength && top == m_FrequentTop) {
+         return false;
+      }
+      m_FrequentLength = maxLength;
+      m_FrequentTop = top;
+      m_CharCounts = null;
+      m_NGrams = null;
+      m_FrequentNGrams = null;
+      return true;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public void setBounds(long lowest, long highest) {
       if (lowest != m_LowestCount || highest != m_HighestCount) { 
          m_LowestCount = lowest;
          m_HighestCount = highest;
@@ -87,45 +130,155 @@ public class Counts {
          return;
       }
       if (f.isFile()) {
-         countFile(f);
+         count(Collections.singletonList(f), null);
       } else if (f.isDirectory()) {
          File[] files = f.listFiles();
          if (files != null) {
+            List<File> toCount = new ArrayList<File>();
             for (File file : files) {
                if (!file.isDirectory()) {
-                  countFile(file);
+                  toCount.add(file);
                }
             }
+            count(toCount, null);
          }
       }
    }
 
    ////////////////////////////////////////////////////////////////////////////
+   // Counts the files in parallel with the same result as counting them in
+   // order. Large files are split into ranges that are also counted in
+   // parallel. Steps pw (if any) as each file is counted.
+   public void count(List<File> files, ProgressWindow pw) {
+      count(files, pw, null);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the files in dir and then what is added to them, and to files
+   // added to dir, as it is added. Appended bytes are counted as following
+   // whatever was counted last. Deleted and overwritten text stays counted.
+   public void watch(File dir, Listener listener) {
+      stopWatching();
+      m_Watcher = new CountWatcher(this, dir, listener);
+      m_Watcher.start();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public void stopWatching() {
+      if (m_Watcher != null) {
+         m_Watcher.close();
+         m_Watcher = null;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public boolean isWatching() {
+      return m_Watcher != null;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // A copy of the counts as they are now, for showing while counting goes
+   // on.
+   public synchronized Counts snapshot() {
+      Counts copy = new Counts(this);
+      copy.m_Index = null;
+      if (m_CharCounts != null) {
+         copy.m_CharCounts = new CharCounts(m_ShowBigrams);
+         copy.m_CharCounts.add(m_CharCounts);
+      }
+      if (m_NGrams != null) {
+         copy.m_NGrams = new NGrams(m_NGrams);
+         copy.m_NGrams.add(m_NGrams);
+      }
+      if (m_FrequentNGrams != null) {
+         copy.m_FrequentNGrams = m_FrequentNGrams.snapshot();
+      }
+      return copy;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // As above, and adds where each file read ends to ends, if any.
+   synchronized void count(List<File> files, ProgressWindow pw, Map<File, Long> ends) {
+      if (files.isEmpty()) {
+         return;
+      }
+      m_Index = null;
+      if (m_FrequentLength < 2 && Pref.getBool("#.count.cache", true)) {
+         countCached(files, pw, ends);
+         return;
+      }
+      ForkJoinPool pool = ForkJoinPool.commonPool();
+      List<PartialCounts.Range> ranges = PartialCounts.split(files, pool.getParallelism());
+      PartialCounts all = getPartialCounts();
+      all.join(pool.invoke(new CountRanges(all, ranges, 0, ranges.size(), pw)));
+      if (ends != null) {
+         all.getEnds(ends);
+      }
+      all.logIgnored();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts f whole, in place of previous, what f counted last time, if
+   // any. Returns what f counted, to pass as previous next time.
+   synchronized PartialCounts recount(File f, PartialCounts previous) {
+      m_Index = null;
+      PartialCounts all = getPartialCounts();
+      if (previous != null) {
+         all.subtract(previous);
+      }
+      PartialCounts pc = all.createEmpty();
+      pc.countFile(f);
+      all.join(pc);
+      all.logIgnored();
+      return pc;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts what f has gained past start. Returns where f ends now.
+   synchronized long append(File f, long start, Utf8Decoder decoder) {
+      m_Index = null;
+      return getPartialCounts().append(f, start, decoder);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // How often the char c was counted.
+   public long getCount(char c) {
+      return m_CharCounts == null ? 0 : m_CharCounts.getCharCount(c);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // How often first was followed by second, if bigrams are counted.
+   public long getBigramCount(char first, char second) {
+      return m_CharCounts == null ? 0 : m_CharCounts.getBigramCount(first, second);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Steps pw, if any, getProgressCount() times.
    public String table(ProgressWindow pw) {
       if (m_Index == null) {
          m_Index = createIndex();
       }
-      pw.step();
+      step(pw);
       int labelSize = getLabelSize();
       String pad = (new String(new char[labelSize])).replace('\0', ' ');
       final int DP = 4;
       String countFormat = String.format("%%%dd", m_Index.getMaxDigits());
 		int pcDigits = m_Index.calcPercents();
-      String str = "";
+      StringBuilder str = new StringBuilder();
       final int STEP = Math.max(1, m_Index.getSize() / (getProgressCount() - 1));
 		for (int i = 0; i < m_Index.getSize(); ++i) {
          if (i % STEP == STEP - 1) {
-            pw.step();
+            step(pw);
          }
          for (int j = 0; j < 3; ++j) {
             switch (j) {
                case 0: {
                   String label = m_Index.getLabel(i);
-                  str += pad.substring(0, pad.length() - label.length()) + label;
+                  str.append(pad.substring(0, Math.max(0, pad.length() - label.length())) + label);
                   break;
                }
                case 1:
-                  str += String.format(countFormat, m_Index.getValue(i));
+                  str.append(String.format(countFormat, m_Index.getValue(i)));
                   break;
                case 2: {
                   int space = pcDigits + 1 + DP;
@@ -136,17 +289,24 @@ public class Counts {
                         --space;
                      }
                   }
-                  str += String.format(String.format("%%%d.%df", space, DP), pc);
+                  str.append(String.format(String.format("%%%d.%df", space, DP), pc));
+                  if (m_FrequentNGrams != null && m_Index.getCounter(i) == m_FrequentNGrams) {
+                     // approximate, so show the lower bound too
+                     long error = m_FrequentNGrams.getError(m_Index.getOffset(i));
+                     if (error > 0) {
+                        str.append(String.format(" >=%d", m_Index.getValue(i) - error));
+                     }
+                  }
                   break;
                }
             }
             if (j < 2) {
-               str += ' ';
+               str.append(' ');
             }
          }
-         str += '\n';
+         str.append('\n');
 		}
-      return str;
+      return str.toString();
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -154,78 +314,101 @@ public class Counts {
       if (m_Index == null) {
          m_Index = createIndex();
       }
-      pw.step();
+      step(pw);
       int labelSize = getLabelSize();
       String pad = (new String(new char[labelSize])).replace('\0', ' ');
       final int WIDTH = sm_PAGE_WIDTH - labelSize;
       double scale = WIDTH / (m_Index.getMax() + 0.5);
-      String str = "";
+      StringBuilder str = new StringBuilder();
       final int STEP = Math.max(1, m_Index.getSize() / (getProgressCount() - 1));
 		for (int i = 0; i < m_Index.getSize(); ++i) {
          if (i % STEP == STEP - 1) {
-            pw.step();
+            step(pw);
          }
          int dots = (int)(m_Index.getValue(i) * scale);
          if (dots > 0) {
             int last = Math.min(dots, WIDTH - 1);
             String label = m_Index.getLabel(i);
-            str += pad.substring(0, Math.max(0, pad.length() - label.length())) + label;
-            str += ' ' + (new String(new char[last])).replace('\0', '=');
-				str += (dots == WIDTH) ? "=\n"
-                 : (dots > WIDTH) ? ">\n" : "\n";
+            str.append(pad.substring(0, Math.max(0, pad.length() - label.length())) + label);
+            str.append(' ' + (new String(new char[last])).replace('\0', '='));
+				str.append((dots == WIDTH) ? "=\n"
+                         : (dots > WIDTH) ? ">\n" : "\n");
 			}
 		}
-      return str;
+      return str.toString();
    }
    
+   ////////////////////////////////////////////////////////////////////////////
+   // The frequent ngrams counted, or null.
+   FrequentNGrams getFrequentNGrams() {
+      return m_FrequentNGrams;
+   }
+
    // Private /////////////////////////////////////////////////////////////////
 
    ////////////////////////////////////////////////////////////////////////////
-   private void countFile(File f) {
-      byte[] data = new byte[(int)f.length()];
-      FileInputStream fis = null;
-      try {
-         fis = new FileInputStream(f);
-      } catch (FileNotFoundException e) {
-         Log.err("Failed to open \"" + f.getPath() + '"');
-         return;
+   private static void step(ProgressWindow pw) {
+      if (pw != null) {
+         pw.step();
       }
-      try {
-         fis.read(data, 0, data.length);
-         fis.close();
-      } catch (IOException e) {
-         Log.err("Failed to read \"" + f.getPath() + '"');
-         return;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the files that are new or have changed since they were cached,
+   // each on its own, then joins them all in order. Files that are gone
+   // drop out of the cache.
+   private void countCached(List<File> files, ProgressWindow pw, Map<File, Long> ends) {
+      CountCache cache = new CountCache(Io.createFile(Persist.getFolderName(), sm_CACHE_FILE_NAME),
+                                        getSignature());
+      PartialCounts all = getPartialCounts();
+      List<File> toCount = new ArrayList<File>();
+      Set<File> cached = new HashSet<File>();
+      for (File f : files) {
+         if (cache.get(f) == null) {
+            toCount.add(f);
+         } else {
+            cached.add(f);
+         }
       }
-      if (m_CharCounts == null) {
-         m_CharCounts = new CharCounts(m_ShowBigrams);
+      if (!toCount.isEmpty()) {
+         ForkJoinPool.commonPool().invoke(new CountFiles(all, toCount, 0, toCount.size(), cache, pw));
       }
-      boolean ignoredSome = false;
-      boolean[] ignored = new boolean[128];
-      ByteBuffer bb = ByteBuffer.wrap(data);
-      while (bb.hasRemaining()) {
-         int cin = bb.get() & 0xFF;
-         if (cin >= 128) {
-            ignoredSome = true;
-            ignored[cin - 128] = true;
-            continue;
+      for (File f : files) {
+         ByteBuffer bb = cache.get(f);
+         PartialCounts pc = bb == null ? null : all.read(bb, f);
+         if (pc == null) {
+            // unreadable, or changed while counting
+            cache.remove(f);
+            pc = all.createEmpty();
+            pc.countFile(f);
          }
-         m_CharCounts.nextChar((char)cin);
-         if (getNGrams() != null) {
-            getNGrams().nextChar((char)cin);
+         all.join(pc);
+         if (pw != null && cached.contains(f)) {
+            pw.step();
          }
       }
-      if (ignoredSome) {
-         String ig = "";
-         for (int i = 0; i < ignored.length; ++i) {
-            if (ignored[i]) {
-               ig += String.format(" 0x%x", i + 128);
-            }
-         }
-         Log.log("Count ignored the following bytes in " + f.getName() + ':' + ig);
+      if (ends != null) {
+         all.getEnds(ends);
       }
-	}
-   
+      all.logIgnored();
+      cache.write();
+      if (toCount.size() < files.size()) {
+         Log.log(String.format("Counted %d of %d files, the rest were cached.", toCount.size(), files.size()));
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // What the cached counts depend on.
+   private String getSignature() {
+      String sig = String.format("bigrams %b repeats %d",
+                                 m_ShowBigrams, Pref.getInt("#.count.repeats.max", 2));
+      if (m_File != null) {
+         sig += String.format(" ngrams %s %d %d",
+                              m_File.getAbsolutePath(), m_File.length(), m_File.lastModified());
+      }
+      return sig;
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    private SharedIndex createIndex() {
       ArrayList<SharedIndexableInts> sic = new ArrayList<SharedIndexableInts>();
@@ -237,6 +420,9 @@ public class Counts {
          if (getNGrams() != null) {
             sic.add(getNGrams());
          }
+         if (m_FrequentNGrams != null) {
+            sic.add(m_FrequentNGrams);
+         }
       }
       return SharedIndex.create(sic, m_HighestCount, m_LowestCount);
    }
@@ -245,12 +431,27 @@ public class Counts {
    ////////////////////////////////////////////////////////////////////////////
    private int getLabelSize() {
       int labelSize = m_ShowBigrams ? 4 : 2;
+      if (m_FrequentNGrams != null) {
+         labelSize = Math.max(labelSize, m_FrequentNGrams.findMaxLength(m_LowestCount, m_HighestCount));
+      }
       if (getNGrams() == null) {
          return labelSize;
       }
       return Math.max(labelSize, getNGrams().findMaxLength(m_LowestCount, m_HighestCount));
    }   
    
+   ////////////////////////////////////////////////////////////////////////////
+   // Wraps the counters so that further counts accumulate into them.
+   private PartialCounts getPartialCounts() {
+      if (m_CharCounts == null) {
+         m_CharCounts = new CharCounts(m_ShowBigrams);
+      }
+      if (m_FrequentNGrams == null && m_FrequentLength >= 2) {
+         m_FrequentNGrams = new FrequentNGrams(m_FrequentLength, m_FrequentTop);
+      }
+      return new PartialCounts(m_CharCounts, getNGrams(), m_FrequentNGrams);
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    private NGrams getNGrams() {
       if (m_NGrams == null) {
@@ -262,13 +463,110 @@ public class Counts {
       return m_NGrams;
    }
 
+   ////////////////////////////////////////////////////////////////////////////
+   // Splits the files in half until there is one to count, then counts its
+   // ranges and caches the result.
+   @SuppressWarnings("serial") // never serialized
+   private static class CountFiles extends RecursiveAction {
+
+      /////////////////////////////////////////////////////////////////////////
+      CountFiles(PartialCounts like, List<File> files, int first, int last, CountCache cache, ProgressWindow pw) {
+         m_Like = like;
+         m_Files = files;
+         m_First = first;
+         m_Last = last;
+         m_Cache = cache;
+         m_ProgressWindow = pw;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      protected void compute() {
+         if (m_Last - m_First == 1) {
+            File f = m_Files.get(m_First);
+            // as it was before reading, so a change while reading is seen
+            long length = f.length();
+            long modified = f.lastModified();
+            List<PartialCounts.Range> ranges =
+               PartialCounts.split(Collections.singletonList(f), ForkJoinPool.getCommonPoolParallelism());
+            PartialCounts pc = (new CountRanges(m_Like, ranges, 0, ranges.size(), m_ProgressWindow)).compute();
+            if (pc.isCounted()) {
+               m_Cache.put(f, length, modified, pc);
+            }
+            return;
+         }
+         int mid = (m_First + m_Last) / 2;
+         invokeAll(new CountFiles(m_Like, m_Files, m_First, mid, m_Cache, m_ProgressWindow),
+                   new CountFiles(m_Like, m_Files, mid, m_Last, m_Cache, m_ProgressWindow));
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final PartialCounts m_Like;
+      private final List<File> m_Files;
+      private final int m_First;
+      private final int m_Last;
+      private final CountCache m_Cache;
+      private final ProgressWindow m_ProgressWindow;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Splits the ranges in half until there is one to count, then joins the
+   // halves in order.
+   @SuppressWarnings("serial") // never serialized
+   private static class CountRanges extends RecursiveTask<PartialCounts> {
+
+      /////////////////////////////////////////////////////////////////////////
+      CountRanges(PartialCounts like, List<PartialCounts.Range> ranges, int first, int last, ProgressWindow pw) {
+         m_Like = like;
+         m_Ranges = ranges;
+         m_First = first;
+         m_Last = last;
+         m_ProgressWindow = pw;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      protected PartialCounts compute() {
+         if (m_Last - m_First == 1) {
+            PartialCounts pc = m_Like.createEmpty();
+            PartialCounts.Range r = m_Ranges.get(m_First);
+            pc.count(r);
+            if (m_ProgressWindow != null && r.isLast()) {
+               synchronized (m_ProgressWindow) {
+                  m_ProgressWindow.step();
+               }
+            }
+            return pc;
+         }
+         int mid = (m_First + m_Last) / 2;
+         CountRanges first = new CountRanges(m_Like, m_Ranges, m_First, mid, m_ProgressWindow);
+         first.fork();
+         PartialCounts second = (new CountRanges(m_Like, m_Ranges, mid, m_Last, m_ProgressWindow)).compute();
+         PartialCounts pc = first.join();
+         pc.join(second);
+         return pc;
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final PartialCounts m_Like;
+      private final List<PartialCounts.Range> m_Ranges;
+      private final int m_First;
+      private final int m_Last;
+      private final ProgressWindow m_ProgressWindow;
+   }
+
    // Data ////////////////////////////////////////////////////////////////////
    private static int sm_PAGE_WIDTH = 78;
+   private static final String sm_CACHE_FILE_NAME = "count.cache";
+   private CountWatcher m_Watcher;
    private CharCounts m_CharCounts;
    private NGrams m_NGrams;
+   private FrequentNGrams m_FrequentNGrams;
+   private int m_FrequentLength;
+   private int m_FrequentTop;
    private File m_File;
    private SharedIndex m_Index;
-   private int m_LowestCount;
-   private int m_HighestCount;
+   private long m_LowestCount;
+   private long m_HighestCount;
    private boolean m_ShowBigrams;
 }
@@ -0,0 +1,645 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * FrequentNGrams.java
+ */
+package pkp.chars;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLongArray;
+import pkp.io.CrLf;
+import pkp.io.Io;
+import pkp.lookup.SharedIndexableInts;
+import pkp.util.IndexSort;
+import pkp.util.Log;
+import pkp.util.Persist;
+import pkp.util.Pref;
+
+////////////////////////////////////////////////////////////////////////////////
+// Finds the most frequent ngrams of every length from 2 to a maximum, in
+// memory that does not grow with the text, so no ngrams file is needed.
+// Each ngram is hashed as it ends and counted in a Count-Min sketch, which
+// never undercounts. The sketch is only made once there are too many
+// different ngrams to count exactly. All the parts of a count share one
+// full size sketch, and each has a small one of its own that is merged when
+// parts are joined, so memory and joins don't grow with the full size for
+// each part. An estimate is the lesser of the two. The ngrams whose counts
+// may be among the highest are tracked Space-Saving style: a new ngram whose
+// estimate beats the lowest tracked count takes its place, starting at its
+// estimate with all but the one just seen as error. Each tracked count is an
+// upper bound, and less its error a lower bound, on the real count.
+class FrequentNGrams implements SharedIndexableInts {
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Tracks the top ngrams up to maxLength long.
+   FrequentNGrams(int maxLength, int top) {
+      this(maxLength, top, new Sketch(Pref.getInt("#.count.sketch.width", 1 << 20),
+                                      Pref.getInt("#.count.sketch.depth", 4)));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Like other but with no counts or state, sharing its sketch.
+   FrequentNGrams(FrequentNGrams other) {
+      this(other.m_MAX_LENGTH, other.m_TOP, other.m_Sketch);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private FrequentNGrams(int maxLength, int top, Sketch sketch) {
+      m_MAX_LENGTH = Math.max(2, maxLength);
+      m_TOP = Math.max(1, top);
+      m_Exact = new SparseCounts();
+      m_Sketch = sketch;
+      m_PART_WIDTH = Math.max(64, sketch.m_WIDTH >> 4);
+      m_PartSketch = null;
+      m_Keys = new long[m_TOP];
+      m_Counts = new long[m_TOP];
+      m_Errors = new long[m_TOP];
+      m_Grams = new int[m_TOP * m_MAX_LENGTH];
+      m_Lengths = new int[m_TOP];
+      m_Heap = new int[m_TOP];
+      m_HeapPos = new int[m_TOP];
+      m_Size = 0;
+      m_Slots = new long[Integer.highestOneBit(m_TOP * 4 - 1) << 1];
+      m_SlotEntry = new int[m_Slots.length];
+      m_Recent = new int[m_MAX_LENGTH];
+      m_Held = 0;
+      m_Total = 0;
+      m_CrLf = new CrLf();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The tracked ngrams as they are now, to show while this counts on. The
+   // copy has an empty sketch of its own, so it is not for counting.
+   FrequentNGrams snapshot() {
+      FrequentNGrams copy = new FrequentNGrams(m_MAX_LENGTH, m_TOP, new Sketch(m_Sketch));
+      System.arraycopy(m_Keys, 0, copy.m_Keys, 0, m_Size);
+      System.arraycopy(m_Counts, 0, copy.m_Counts, 0, m_Size);
+      System.arraycopy(m_Errors, 0, copy.m_Errors, 0, m_Size);
+      System.arraycopy(m_Grams, 0, copy.m_Grams, 0, m_Size * m_MAX_LENGTH);
+      System.arraycopy(m_Lengths, 0, copy.m_Lengths, 0, m_Size);
+      copy.m_Size = m_Size;
+      copy.m_Total = m_Total;
+      return copy;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override // SharedIndexableInts
+   public int getSize() {
+      return m_Size;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override // SharedIndexableInts
+   public long getCount(int i) {
+      return m_Counts[i];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override // SharedIndexableInts
+   public String getLabel(int i) {
+      return Io.toEscape(getGram(i));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The most getCount(i) may be over.
+   long getError(int i) {
+      return m_Errors[i];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The ngrams counted.
+   long getTotal() {
+      return m_Total;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // c is a code point.
+   void nextChar(int c) {
+      c = m_CrLf.next(c);
+      if (c == '\0') {
+         return;
+      }
+      System.arraycopy(m_Recent, 0, m_Recent, 1, m_MAX_LENGTH - 1);
+      m_Recent[0] = c;
+      m_Held = Math.min(m_Held + 1, m_MAX_LENGTH);
+      // the ngrams ending with c, shortest first
+      long key = toKey(0, c);
+      for (int n = 2; n <= m_Held; ++n) {
+         key = toKey(key, m_Recent[n - 1]);
+         count(key == 0 ? 1 : key, n);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int findMaxLength(long min, long max) {
+      int maxLen = 0;
+      for (int i = 0; i < m_Size; ++i) {
+         if (m_Counts[i] >= min && m_Counts[i] <= max) {
+            maxLen = Math.max(maxLen, getLabel(i).length());
+         }
+      }
+      return maxLen;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds the counts of other. Either side may have held up to its estimate
+   // of an ngram it does not track.
+   void add(FrequentNGrams other) {
+      long[] otherUntracked = new long[m_Size];
+      for (int i = 0; i < m_Size; ++i) {
+         otherUntracked[i] = other.find(m_Keys[i]) >= 0 ? 0 : other.getEstimate(m_Keys[i]);
+      }
+      long[] thisUntracked = new long[other.m_Size];
+      for (int i = 0; i < other.m_Size; ++i) {
+         thisUntracked[i] = find(other.m_Keys[i]) >= 0 ? 0 : getEstimate(other.m_Keys[i]);
+      }
+      addSketch(other, 1);
+      m_Total += other.m_Total;
+      int entries = m_Size + other.m_Size;
+      long[] keys = new long[entries];
+      long[] counts = new long[entries];
+      long[] errors = new long[entries];
+      int[] grams = new int[entries * m_MAX_LENGTH];
+      int[] lengths = new int[entries];
+      int n = 0;
+      for (int i = 0; i < m_Size; ++i) {
+         keys[n] = m_Keys[i];
+         counts[n] = m_Counts[i] + otherUntracked[i];
+         errors[n] = m_Errors[i] + otherUntracked[i];
+         System.arraycopy(m_Grams, i * m_MAX_LENGTH, grams, n * m_MAX_LENGTH, m_MAX_LENGTH);
+         lengths[n] = m_Lengths[i];
+         ++n;
+      }
+      for (int i = 0; i < other.m_Size; ++i) {
+         int e = find(other.m_Keys[i]);
+         if (e >= 0) {
+            counts[e] += other.m_Counts[i];
+            errors[e] += other.m_Errors[i];
+         } else {
+            keys[n] = other.m_Keys[i];
+            counts[n] = other.m_Counts[i] + thisUntracked[i];
+            errors[n] = other.m_Errors[i] + thisUntracked[i];
+            System.arraycopy(other.m_Grams, i * m_MAX_LENGTH, grams, n * m_MAX_LENGTH, m_MAX_LENGTH);
+            lengths[n] = other.m_Lengths[i];
+            ++n;
+         }
+      }
+      rebuild(keys, counts, errors, grams, lengths, n);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Removes the counts of other, which counted part of what this did.
+   void subtract(FrequentNGrams other) {
+      m_Total -= other.m_Total;
+      for (int e = 0; e < m_Size; ++e) {
+         // other's bounds on the ngram, so that this's stay bounds
+         int o = other.find(m_Keys[e]);
+         long otherUpper = o >= 0 ? other.m_Counts[o] : other.getEstimate(m_Keys[e]);
+         long otherLower = o >= 0 ? other.m_Counts[o] - other.m_Errors[o] : 0;
+         long lower = Math.max(0, m_Counts[e] - m_Errors[e] - otherUpper);
+         m_Counts[e] = Math.max(0, m_Counts[e] - otherLower);
+         m_Errors[e] = m_Counts[e] - Math.min(lower, m_Counts[e]);
+      }
+      addSketch(other, -1);
+      for (int h = m_Size / 2 - 1; h >= 0; --h) {
+         siftDown(h);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether both will count whatever comes next the same way.
+   boolean isSameState(FrequentNGrams other) {
+      // the oldest is never part of an ngram again
+      int held = Math.min(m_Held, m_MAX_LENGTH - 1);
+      if (held != Math.min(other.m_Held, m_MAX_LENGTH - 1)
+       || !m_CrLf.isSameState(other.m_CrLf)) {
+         return false;
+      }
+      for (int i = 0; i < held; ++i) {
+         if (m_Recent[i] != other.m_Recent[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void setState(FrequentNGrams other) {
+      m_CrLf = new CrLf(other.m_CrLf);
+      m_Recent = other.m_Recent.clone();
+      m_Held = other.m_Held;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static long toKey(long key, int c) {
+      return (key + c + 1) * 0x100000001B3L;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private boolean isFull() {
+      return m_Size == m_TOP;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the ngram of the n most recent chars.
+   private void count(long key, int n) {
+      ++m_Total;
+      long estimate = addEstimate(key, 1);
+      int e = find(key);
+      if (e >= 0) {
+         long count = Math.min(m_Counts[e] + 1, estimate);
+         // a lower count is a tighter bound, the lower bound stays put
+         m_Errors[e] = Math.max(0, m_Errors[e] - (m_Counts[e] + 1 - count));
+         boolean lower = count < m_Counts[e];
+         m_Counts[e] = count;
+         if (lower) {
+            siftUp(m_HeapPos[e]);
+         } else {
+            siftDown(m_HeapPos[e]);
+         }
+         return;
+      }
+      if (!isFull()) {
+         // nothing has been dropped yet, so this is the first
+         e = m_Size++;
+         m_Heap[e] = e;
+         m_HeapPos[e] = e;
+         set(e, key, n, 1, 0);
+         siftUp(e);
+         return;
+      }
+      long lowest = m_Counts[m_Heap[0]];
+      if (estimate <= lowest) {
+         // can't beat the lowest
+         return;
+      }
+      // the estimate never undercounts, whatever the lowest has become
+      e = m_Heap[0];
+      remove(m_Keys[e]);
+      set(e, key, n, estimate, estimate - 1);
+      siftDown(0);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void set(int e, long key, int n, long count, long error) {
+      m_Keys[e] = key;
+      m_Counts[e] = count;
+      m_Errors[e] = error;
+      m_Lengths[e] = n;
+      for (int i = 0; i < n; ++i) {
+         // oldest first
+         m_Grams[e * m_MAX_LENGTH + i] = m_Recent[n - 1 - i];
+      }
+      insert(key, e);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private String getGram(int e) {
+      return new String(m_Grams, e * m_MAX_LENGTH, m_Lengths[e]);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Keeps the m_TOP highest counts, tightened by the sketch.
+   private void rebuild(long[] keys, long[] counts, long[] errors, int[] grams, int[] lengths, int n) {
+      Arrays.fill(m_Slots, 0);
+      m_Size = 0;
+      for (int i = 0; i < n; ++i) {
+         long estimate = getEstimate(keys[i]);
+         if (counts[i] > estimate) {
+            errors[i] = Math.max(0, errors[i] - (counts[i] - estimate));
+            counts[i] = estimate;
+         }
+      }
+      long[] order = new long[n];
+      for (int i = 0; i < n; ++i) {
+         order[i] = counts[i];
+      }
+      int[] index = IndexSort.sort(order, false);
+      for (int i = 0; i < Math.min(n, m_TOP); ++i) {
+         int from = index[i];
+         int e = m_Size++;
+         m_Keys[e] = keys[from];
+         m_Counts[e] = counts[from];
+         m_Errors[e] = errors[from];
+         m_Lengths[e] = lengths[from];
+         System.arraycopy(grams, from * m_MAX_LENGTH, m_Grams, e * m_MAX_LENGTH, m_MAX_LENGTH);
+         insert(keys[from], e);
+         m_Heap[e] = e;
+         m_HeapPos[e] = e;
+      }
+      for (int h = m_Size / 2 - 1; h >= 0; --h) {
+         siftDown(h);
+      }
+   }
+
+   // Sketch //////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds count to key and returns its estimate.
+   private long addEstimate(long key, long count) {
+      if (m_PartSketch == null) {
+         m_Exact.add(key, count);
+         if (m_Exact.size() <= sm_EXACT_KEYS) {
+            return m_Exact.getCount(key);
+         }
+         // too many to count exactly
+         toSketch();
+         return getEstimate(key);
+      }
+      long h = mix(key);
+      long least = m_Sketch.add(h, count);
+      for (int r = 0; r < m_Sketch.m_DEPTH; ++r) {
+         int i = getIndex(h, r, m_PART_WIDTH);
+         m_PartSketch[i] += count;
+         least = Math.min(least, m_PartSketch[i]);
+      }
+      return least;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private long getEstimate(long key) {
+      if (m_PartSketch == null) {
+         return m_Exact.getCount(key);
+      }
+      long h = mix(key);
+      long least = m_Sketch.getEstimate(h);
+      for (int r = 0; r < m_Sketch.m_DEPTH; ++r) {
+         least = Math.min(least, m_PartSketch[getIndex(h, r, m_PART_WIDTH)]);
+      }
+      return least;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Moves the exact counts into the sketches.
+   private void toSketch() {
+      if (m_PartSketch != null) {
+         return;
+      }
+      SparseCounts exact = m_Exact;
+      m_Exact = null;
+      m_PartSketch = new long[m_Sketch.m_DEPTH * m_PART_WIDTH];
+      for (int s = 0; s < exact.getSlots(); ++s) {
+         if (exact.getKey(s) != 0) {
+            addEstimate(exact.getKey(s), exact.getSlotCount(s));
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds sign * the counts of other, which follows or is part of this.
+   private void addSketch(FrequentNGrams other, int sign) {
+      if (other.m_PartSketch == null) {
+         SparseCounts exact = other.m_Exact;
+         for (int s = 0; s < exact.getSlots(); ++s) {
+            if (exact.getKey(s) != 0) {
+               addEstimate(exact.getKey(s), sign * exact.getSlotCount(s));
+            }
+         }
+         return;
+      }
+      // other's counts are in the shared sketch already, where a part taken
+      // away can't be told from the rest, so it is left to overcount
+      toSketch();
+      for (int i = 0; i < m_PartSketch.length; ++i) {
+         m_PartSketch[i] += sign * other.m_PartSketch[i];
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The counter of hash h in row r.
+   private static int getIndex(long h, int r, int width) {
+      return r * width + ((int)((h + r * (h >>> 32 | 1)) >>> 20) & (width - 1));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // A Count-Min sketch shared by threads, made the first time it is used.
+   private static class Sketch {
+
+      /////////////////////////////////////////////////////////////////////////
+      Sketch(int width, int depth) {
+         m_WIDTH = Integer.highestOneBit(Math.max(64, width));
+         m_DEPTH = Math.max(1, depth);
+         m_Counters = null;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // Empty, the same size as other.
+      Sketch(Sketch other) {
+         this(other.m_WIDTH, other.m_DEPTH);
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // Adds count to each row of hash h and returns the least.
+      long add(long h, long count) {
+         AtomicLongArray counters = getCounters();
+         long least = Long.MAX_VALUE;
+         for (int r = 0; r < m_DEPTH; ++r) {
+            least = Math.min(least, counters.addAndGet(getIndex(h, r, m_WIDTH), count));
+         }
+         return least;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      long getEstimate(long h) {
+         AtomicLongArray counters = getCounters();
+         long least = Long.MAX_VALUE;
+         for (int r = 0; r < m_DEPTH; ++r) {
+            least = Math.min(least, counters.get(getIndex(h, r, m_WIDTH)));
+         }
+         return least;
+      }
+
+      // Private //////////////////////////////////////////////////////////////
+
+      /////////////////////////////////////////////////////////////////////////
+      private AtomicLongArray getCounters() {
+         AtomicLongArray counters = m_Counters;
+         if (counters == null) {
+            synchronized (this) {
+               if (m_Counters == null) {
+                  m_Counters = new AtomicLongArray(m_DEPTH * m_WIDTH);
+               }
+               counters = m_Counters;
+            }
+         }
+         return counters;
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      // counters per row, a power of 2
+      private final int m_WIDTH;
+      private final int m_DEPTH;
+      // m_DEPTH rows of m_WIDTH counters
+      private volatile AtomicLongArray m_Counters;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static long mix(long key) {
+      key ^= key >>> 33;
+      key *= 0xFF51AFD7ED558CCDL;
+      key ^= key >>> 33;
+      return key;
+   }
+
+   // Tracked /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The entry of key, or -1.
+   private int find(long key) {
+      int s = findSlot(key);
+      return m_Slots[s] == 0 ? -1 : m_SlotEntry[s];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private int findSlot(long key) {
+      int mask = m_Slots.length - 1;
+      int s = (int)(mix(key) >>> 32) & mask;
+      while (m_Slots[s] != 0 && m_Slots[s] != key) {
+         s = (s + 1) & mask;
+      }
+      return s;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void insert(long key, int e) {
+      int s = findSlot(key);
+      m_Slots[s] = key;
+      m_SlotEntry[s] = e;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Closes the gap by moving back the keys that probed past it.
+   private void remove(long key) {
+      int mask = m_Slots.length - 1;
+      int gap = findSlot(key);
+      m_Slots[gap] = 0;
+      for (int s = (gap + 1) & mask; m_Slots[s] != 0; s = (s + 1) & mask) {
+         int home = (int)(mix(m_Slots[s]) >>> 32) & mask;
+         // move it if the gap is between its home and here
+         if (((s - home) & mask) >= ((s - gap) & mask)) {
+            m_Slots[gap] = m_Slots[s];
+            m_SlotEntry[gap] = m_SlotEntry[s];
+            m_Slots[s] = 0;
+            gap = s;
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Min heap of entries by count.
+   private void siftDown(int h) {
+      int e = m_Heap[h];
+      for (int child; (child = 2 * h + 1) < m_Size; h = child) {
+         if (child + 1 < m_Size && m_Counts[m_Heap[child + 1]] < m_Counts[m_Heap[child]]) {
+            ++child;
+         }
+         if (m_Counts[m_Heap[child]] >= m_Counts[e]) {
+            break;
+         }
+         m_Heap[h] = m_Heap[child];
+         m_HeapPos[m_Heap[h]] = h;
+      }
+      m_Heap[h] = e;
+      m_HeapPos[e] = h;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void siftUp(int h) {
+      int e = m_Heap[h];
+      for (int parent; h > 0 && m_Counts[m_Heap[parent = (h - 1) / 2]] > m_Counts[e]; h = parent) {
+         m_Heap[h] = m_Heap[parent];
+         m_HeapPos[m_Heap[h]] = h;
+      }
+      m_Heap[h] = e;
+      m_HeapPos[e] = h;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   // different ngrams counted exactly before the sketch is made
+   private static final int sm_EXACT_KEYS = 1 << 12;
+   private final int m_MAX_LENGTH;
+   private final int m_TOP;
+   // counts until they move to the sketches, then null
+   private SparseCounts m_Exact;
+   // shared with the counters of the other parts
+   private final Sketch m_Sketch;
+   // a sixteenth of m_Sketch's width, a power of 2
+   private final int m_PART_WIDTH;
+   // m_Sketch's depth of rows of m_PART_WIDTH counters of this part only,
+   // null until the exact counts move
+   private long[] m_PartSketch;
+   // the tracked ngrams
+   private final long[] m_Keys;
+   private final long[] m_Counts;
+   private final long[] m_Errors;
+   // m_MAX_LENGTH code points per entry
+   private final int[] m_Grams;
+   private final int[] m_Lengths;
+   private final int[] m_Heap;
+   private final int[] m_HeapPos;
+   private int m_Size;
+   // key to entry, 0 for an empty slot
+   private final long[] m_Slots;
+   private final int[] m_SlotEntry;
+   // the latest chars, newest first
+   private int[] m_Recent;
+   private int m_Held;
+   private long m_Total;
+   private CrLf m_CrLf;
+
+   // Main /////////////////////////////////////////////////////////////////////
+   // Counts the frequent ngrams of a text file, then recounts the tracked ones
+   // exactly and lists any whose real count is outside its bounds.
+   public static void main(String[] argv) throws IOException {
+      Log.init(Log.ExitOnError);
+      Log.setConsole(true);
+      Persist.init("twidlit.properties", ".", "pref");
+      Pref.init("twidlit.preferences", Persist.get("#.pref.dir"), "pref");
+      Pref.set("#.count.cache", "false");
+      File f = new File(argv[0]);
+      Counts counts = new Counts(null, 1, Long.MAX_VALUE);
+      counts.setFrequentNGrams(Integer.parseInt(argv[1]),
+                               argv.length > 2 ? Integer.parseInt(argv[2]) : 100);
+      counts.count(Collections.singletonList(f), null);
+      FrequentNGrams fng = counts.getFrequentNGrams();
+      long[] real = new long[fng.m_Size];
+      Utf8Decoder decoder = new Utf8Decoder();
+      CrLf crLf = new CrLf();
+      int[] recent = new int[fng.m_MAX_LENGTH];
+      int held = 0;
+      for (byte b : Files.readAllBytes(f.toPath())) {
+         int c = decoder.next(b & 0xFF);
+         if (c == Utf8Decoder.sm_MORE || (c = crLf.next(c)) == '\0') {
+            continue;
+         }
+         System.arraycopy(recent, 0, recent, 1, fng.m_MAX_LENGTH - 1);
+         recent[0] = c;
+         held = Math.min(held + 1, fng.m_MAX_LENGTH);
+         long key = toKey(0, c);
+         for (int n = 2; n <= held; ++n) {
+            key = toKey(key, recent[n - 1]);
+            int e = fng.find(key == 0 ? 1 : key);
+            if (e >= 0) {
+               ++real[e];
+            }
+         }
+      }
+      int bad = 0;
+      for (int e = 0; e < fng.m_Size; ++e) {
+         long lower = fng.m_Counts[e] - fng.m_Errors[e];
+         boolean ok = lower <= real[e] && real[e] <= fng.m_Counts[e];
+         if (!ok) {
+            ++bad;
+         }
+         System.out.printf("%8s %10d %10d..%d%s%n", fng.getLabel(e), real[e], lower, fng.m_Counts[e], ok ? "" : " outside");
+      }
+      System.out.printf("%d of %d outside their bounds%n", bad, fng.m_Size);
+      System.exit(bad == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * LayoutCosts.java
+ */
+package pkp.chars;
+
+import java.util.List;
+import java.util.Calendar;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.text.SimpleDateFormat;
+import java.io.File;
+import pkp.times.ChordTimes;
+import pkp.twiddle.Chord;
+import pkp.twiddle.KeyMap;
+import pkp.twiddle.KeyPress;
+import pkp.twiddle.ThumbKeys;
+import pkp.util.IndexSort;
+
+////////////////////////////////////////////////////////////////////////////////
+// The time it would take to type a corpus with each of a number of keymaps,
+// at the mean chord times. The corpus is read and turned into keystrokes
+// once, a buffer at a time, and each buffer is matched against all the
+// keymaps in parallel.
+public class LayoutCosts {
+
+   ////////////////////////////////////////////////////////////////////////////
+   // names label the maps in the table.
+   public LayoutCosts(List<String> names, List<KeyMap> maps, ChordTimes times) {
+      m_Names = names;
+      m_Times = times;
+      m_KeyPresses = ChordUsage.createKeyPresses();
+      m_Usage = new ChordUsage[maps.size()];
+      for (int i = 0; i < m_Usage.length; ++i) {
+         m_Usage[i] = new ChordUsage(maps.get(i), m_KeyPresses, false);
+      }
+      m_Files = 0;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds the files to the corpus.
+   public void count(List<File> files) {
+      if (m_Usage.length == 0) {
+         return;
+      }
+      final ForkJoinPool pool = ForkJoinPool.commonPool();
+      for (File f : files) {
+         ChordUsage.read(f, m_KeyPresses, new ChordUsage.Reader() {
+            public void read(KeyPress[] keys, int n) {
+               pool.invoke(new CountLayouts(m_Usage, keys, n, 0, m_Usage.length));
+            }
+         });
+         for (ChordUsage cu : m_Usage) {
+            cu.endText();
+         }
+         ++m_Files;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The layouts from fastest to slowest. Chords without times are taken to
+   // be as slow as the mean chord.
+   public String table() {
+      int layouts = m_Usage.length;
+      long[] totalMs = new long[layouts];
+      long[] presses = new long[layouts];
+      long[] untimed = new long[layouts];
+      for (int thumbs = 0; thumbs <= ThumbKeys.sm_VALUES; ++thumbs) {
+         int meanMean = m_Times.getMeanMean(thumbs);
+         for (int chord = 1; chord <= Chord.sm_VALUES; ++chord) {
+            int mean = m_Times.getMean(chord, thumbs);
+            for (int i = 0; i < layouts; ++i) {
+               long count = m_Usage[i].getCount(chord, thumbs);
+               presses[i] += count;
+               if (mean == 0) {
+                  untimed[i] += count;
+                  totalMs[i] += count * meanMean;
+               } else {
+                  totalMs[i] += count * mean;
+               }
+            }
+         }
+      }
+      SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+      StringBuilder str = new StringBuilder();
+      str.append("# Twidlit Layout Costs at " + df.format(Calendar.getInstance().getTime()) + '\n');
+      str.append(String.format("# Corpus %d files%n", m_Files));
+      str.append("# Times  " + m_Times.getExtension() + '\n');
+      str.append("#   msec/press     total sec      presses      untimed  unmapped  layout\n");
+      for (int i : IndexSort.sort(totalMs, true)) {
+         str.append(String.format("%14.1f %13.1f %12d %12d %9d  %s%n",
+                                  presses[i] == 0 ? 0.0 : (double)totalMs[i] / presses[i],
+                                  totalMs[i] / 1000.0,
+                                  presses[i],
+                                  untimed[i],
+                                  m_Usage[i].getUnmapped(),
+                                  m_Names.get(i)));
+      }
+      return str.toString();
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Splits the layouts in half until there is one to count the keys with.
+   @SuppressWarnings("serial") // never serialized
+   private static class CountLayouts extends RecursiveAction {
+
+      /////////////////////////////////////////////////////////////////////////
+      CountLayouts(ChordUsage[] usage, KeyPress[] keys, int n, int first, int last) {
+         m_Usage = usage;
+         m_Keys = keys;
+         m_N = n;
+         m_First = first;
+         m_Last = last;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      protected void compute() {
+         if (m_Last - m_First == 1) {
+            m_Usage[m_First].count(m_Keys, m_N);
+            return;
+         }
+         int mid = (m_First + m_Last) / 2;
+         invokeAll(new CountLayouts(m_Usage, m_Keys, m_N, m_First, mid),
+                   new CountLayouts(m_Usage, m_Keys, m_N, mid, m_Last));
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final ChordUsage[] m_Usage;
+      private final KeyPress[] m_Keys;
+      private final int m_N;
+      private final int m_First;
+      private final int m_Last;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private final List<String> m_Names;
+   private final ChordTimes m_Times;
+   private final KeyPress[] m_KeyPresses;
+   private final ChordUsage[] m_Usage;
+   private int m_Files;
+}
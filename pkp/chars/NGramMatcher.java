@@ -0,0 +1,131 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * NGramMatcher.java
+ */
+package pkp.chars;
+
+import java.util.Arrays;
+import java.util.List;
+
+////////////////////////////////////////////////////////////////////////////////
+// An Aho-Corasick automaton that finds every occurrence of a list of ngrams,
+// overlapping or not. The transitions are a dense table over the chars that
+// occur in the ngrams, so matching is one lookup per char. Chars that occur
+// in no ngram share a column that leads back to the start. Chars are code
+// points, and the table is only as wide as the ngrams need.
+// Immutable, so it can be shared by any number of NGrams.
+class NGramMatcher {
+
+   ////////////////////////////////////////////////////////////////////////////
+   static final int sm_START = 0;
+
+   ////////////////////////////////////////////////////////////////////////////
+   NGramMatcher(List<String> nGrams) {
+      // number the chars that occur, 0 is for the rest
+      int maxChar = 127;
+      int maxStates = 1;
+      for (String ng : nGrams) {
+         for (int i = 0; i < ng.length(); i += Character.charCount(ng.codePointAt(i))) {
+            maxChar = Math.max(maxChar, ng.codePointAt(i));
+         }
+         maxStates += ng.length();
+      }
+      m_Column = new int[maxChar + 1];
+      int columns = 1;
+      for (String ng : nGrams) {
+         for (int i = 0; i < ng.length(); i += Character.charCount(ng.codePointAt(i))) {
+            if (m_Column[ng.codePointAt(i)] == 0) {
+               m_Column[ng.codePointAt(i)] = columns++;
+            }
+         }
+      }
+      m_Columns = columns;
+
+      // the trie, with -1 for no transition
+      int[] next = new int[maxStates * m_Columns];
+      Arrays.fill(next, -1);
+      int[] found = new int[maxStates];
+      Arrays.fill(found, -1);
+      m_SameNGram = new int[nGrams.size()];
+      int states = 1;
+      for (int n = 0; n < nGrams.size(); ++n) {
+         String ng = nGrams.get(n);
+         int s = sm_START;
+         for (int i = 0; i < ng.length(); i += Character.charCount(ng.codePointAt(i))) {
+            int t = s * m_Columns + m_Column[ng.codePointAt(i)];
+            if (next[t] == -1) {
+               next[t] = states++;
+            }
+            s = next[t];
+         }
+         // listed more than once, each is counted
+         m_SameNGram[n] = found[s];
+         found[s] = n;
+      }
+
+      // breadth first, fill in the missing transitions from the failure
+      // (longest proper suffix) state, which is always nearer the start
+      int[] fail = new int[states];
+      int[] alsoFound = new int[states];
+      alsoFound[sm_START] = -1;
+      int[] queue = new int[states];
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = sm_START;
+      while (head < tail) {
+         int s = queue[head++];
+         // column 0 always leads back to the start
+         next[s * m_Columns] = sm_START;
+         for (int c = 1; c < m_Columns; ++c) {
+            int u = next[s * m_Columns + c];
+            if (u == -1) {
+               next[s * m_Columns + c] = s == sm_START
+                                         ? sm_START
+                                         : next[fail[s] * m_Columns + c];
+            } else {
+               int f = s == sm_START ? sm_START : next[fail[s] * m_Columns + c];
+               fail[u] = f;
+               alsoFound[u] = found[f] != -1 ? f : alsoFound[f];
+               queue[tail++] = u;
+            }
+         }
+      }
+      m_Next = Arrays.copyOf(next, states * m_Columns);
+      m_Found = Arrays.copyOf(found, states);
+      m_AlsoFound = alsoFound;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int getStateCount() {
+      return m_Found.length;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Moves from state on code point c and adds 1 to counts of each ngram
+   // found.
+   int next(int state, int c, long[] counts) {
+      state = m_Next[state * m_Columns + (c < m_Column.length ? m_Column[c] : 0)];
+      for (int s = m_Found[state] != -1 ? state : m_AlsoFound[state];
+           s != -1;
+           s = m_AlsoFound[s]) {
+         for (int n = m_Found[s]; n != -1; n = m_SameNGram[n]) {
+            ++counts[n];
+         }
+      }
+      return state;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   // code point to column of m_Next
+   private final int[] m_Column;
+   private final int m_Columns;
+   // state * m_Columns + column to state
+   private final int[] m_Next;
+   // state to last ngram ending there or -1
+   private final int[] m_Found;
+   // ngram to previous identical ngram or -1
+   private final int[] m_SameNGram;
+   // state to nearest suffix state where ngrams end or -1
+   private final int[] m_AlsoFound;
+}
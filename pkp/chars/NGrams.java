@@ -8,14 +8,11 @@ package pkp.chars;
 import java.io.File;
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import pkp.twiddle.KeyPress;
 import pkp.twiddle.KeyPressList;
-import pkp.lookup.LookupSet;
-import pkp.lookup.LookupSetBuilder;
-import pkp.lookup.LookupTable;
-import pkp.lookup.LookupTableBuilder;
-import pkp.lookup.LookupBuilder.Duplicates;
 import pkp.lookup.SharedIndexableInts;
 import pkp.io.LineReader;
 import pkp.io.Io;
@@ -25,43 +22,32 @@ import pkp.util.Log;
 
 ////////////////////////////////////////////////////////////////////////////////
 // Finds ngrams (read from a file) in text supplied char by char
-// to nextChar().
+// to nextChar(). All occurrences are counted, including overlapping ones.
 class NGrams implements SharedIndexableInts {
    
    ////////////////////////////////////////////////////////////////////////////
    NGrams(File f) {
-      m_CurrentIndex = new ArrayList<Integer>();
-      m_Current = new ArrayList<NGram>();
       m_NGRAMS = read(f);
-      m_Counts = new ArrayList<Integer>(m_NGRAMS.size());
-      for (int i = 0; i < m_NGRAMS.size(); ++i) {
-         m_Counts.add(0);
-      }
-      // Create lookup tables of
-      // 1/ all characters in the ngrams (relevancy set) and
-      // 2/ all ngram initial characters (lookup ngram).
-      LookupSetBuilder lsbr = new LookupSetBuilder(0x20, 0x7f);
-      lsbr.setDuplicates(Duplicates.IGNORE);
-      LookupTableBuilder ltbs = new LookupTableBuilder(0x20, 0x7f);
-      ltbs.setDuplicates(Duplicates.STORE);
-      for (int i = 0; i < m_NGRAMS.size(); ++i) {
-         String chars = m_NGRAMS.get(i);
-         for (int j = 0; j < chars.length(); ++j) {
-//System.out.printf("a>%c<%n", chars.charAt(j));
-            lsbr.add((int)chars.charAt(j));
-         }
-//System.out.printf("i>%c< %d%n", chars.charAt(0), i);
-         ltbs.add((int)chars.charAt(0), i + 1);
-      }
-      m_RELEVANT = lsbr.build();
-      m_START = ltbs.build();
+      m_MATCHER = new NGramMatcher(m_NGRAMS);
+      m_Counts = new long[m_NGRAMS.size()];
+      m_State = NGramMatcher.sm_START;
+      m_CrLf = new CrLf();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Shares the ngrams of other but starts with no counts or state.
+   NGrams(NGrams other) {
+      m_NGRAMS = other.m_NGRAMS;
+      m_MATCHER = other.m_MATCHER;
+      m_Counts = new long[m_NGRAMS.size()];
+      m_State = NGramMatcher.sm_START;
       m_CrLf = new CrLf();
    }
    
    ////////////////////////////////////////////////////////////////////////////
    @Override // SharedIndexableInts
    public int getSize() {
-      return m_Counts.size();
+      return m_Counts.length;
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -72,69 +58,84 @@ class NGrams implements SharedIndexableInts {
 
    ////////////////////////////////////////////////////////////////////////////
    @Override // SharedIndexableInts
-   public int getCount(int i) {
-//System.out.printf("getCount(%d) %d%n", i, m_Counts.get(i));
-      return m_Counts.get(i);
+   public long getCount(int i) {
+      return m_Counts[i];
    }
 
    ////////////////////////////////////////////////////////////////////////////
-   public void nextChar(char c) {
+   // c is a code point.
+   public void nextChar(int c) {
       c = m_CrLf.next(c);
       if (c == '\0') {
          return;
       }
-      if (!m_RELEVANT.is(c)) {
-         // irrelevant new char invalidates any current ngrams
-         if (m_Current.size() > 0) {
-            m_Current.clear();
-            m_CurrentIndex.clear();
-         }
-         return;
+      m_State = m_MATCHER.next(m_State, c, m_Counts);
+   }
+   
+   ////////////////////////////////////////////////////////////////////////////
+   void add(NGrams other) {
+      for (int i = 0; i < m_Counts.length; ++i) {
+         m_Counts[i] += other.m_Counts[i];
       }
-// latest character is relevant, how many ngrams in process
-//System.out.printf("[0x%x]%c[size %d%n", (int)c, c, m_CurrentIndex.size());
-      for (int i = m_Current.size() - 1; i >= 0; --i) {
-         if (!m_Current.get(i).nextChar(c)) {
-// mismatch - remove it
-//System.out.printf(">%c<->%s<%n", c, m_Current.get(i).getChars());
-            m_Current.remove(i);
-            m_CurrentIndex.remove(i);
-         } else if (m_Current.get(i).matched()) {
-// match complete
-            m_Counts.set(m_CurrentIndex.get(i), m_Counts.get(m_CurrentIndex.get(i)) + 1);
-//System.out.printf(">%c<!>%s< x%d%n", c, m_Current.get(i).getChars(), m_Counts.get(m_CurrentIndex.get(i)));
-            m_Current.remove(i);
-            m_CurrentIndex.remove(i);
-         } else {
-//System.out.printf(">%c<+>%s<%n", c, m_Current.get(i).getChars());
-         }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void subtract(NGrams other) {
+      for (int i = 0; i < m_Counts.length; ++i) {
+         m_Counts[i] -= other.m_Counts[i];
       }
-      int[] indexes = m_START.getAll((int)c, LookupTable.sm_NO_VALUE);
-      if (indexes == null) {
-//System.out.printf(">%c<", c);
-      } else {
-//System.out.printf("?>%c< indexes[0] %d ", c, indexes[0]);
-         for (int i = 1; i < indexes[0]; ++i) {
-//System.out.printf("i %d ix %d ", i, indexes[i]);
-            if (indexes[i] > 0) {
-               m_Current.add(new NGram(m_NGRAMS.get(indexes[i] - 1)));
-//System.out.printf("+>%s< ", m_NGRAMS.get(indexes[i] - 1));
-               m_CurrentIndex.add(indexes[i] - 1);
-            }
-         }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether both will count whatever comes next the same way.
+   boolean isSameState(NGrams other) {
+      return m_State == other.m_State
+          && m_CrLf.isSameState(other.m_CrLf);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void setState(NGrams other) {
+      m_CrLf = new CrLf(other.m_CrLf);
+      m_State = other.m_State;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The counts and state, for reading into an empty NGrams.
+   void write(ByteBuffer bb) {
+      SparseCounts.write(bb, m_Counts);
+      bb.putInt(m_State);
+      m_CrLf.write(bb);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int writeSize() {
+      return SparseCounts.writeSize(m_Counts) + 4 + CrLf.writeSize();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds the counts write() wrote and takes its state. Returns false if
+   // they are not of these ngrams.
+   boolean read(ByteBuffer bb) {
+      if (!SparseCounts.read(bb, m_Counts)) {
+         return false;
+      }
+      int state = bb.getInt();
+      if (state < 0 || state >= m_MATCHER.getStateCount()) {
+         return false;
       }
-//System.out.println();
-//System.out.printf("]size %d%n", m_CurrentIndex.size());
+      m_State = state;
+      m_CrLf = new CrLf(bb);
+      return true;
    }
-   
+
    ////////////////////////////////////////////////////////////////////////////
-   int findMaxLength(int min, int max) {
+   int findMaxLength(long min, long max) {
       int maxLen = 0;
       for (int i = 0; i < getSize(); ++i) {
          int len = Io.toEscape(m_NGRAMS.get(i)).length();
          if (len > maxLen
-          && m_Counts.get(i) >= min
-          && m_Counts.get(i) <= max) {
+          && m_Counts[i] >= min
+          && m_Counts[i] <= max) {
             maxLen = len;
          }
       }
@@ -155,7 +156,8 @@ class NGrams implements SharedIndexableInts {
       } catch (MalformedURLException e) {
          Log.err("Failed to create URL from \"" + f.getPath() + "\".");
       }
-      LineReader lr = new LineReader(url, Io.sm_MUST_EXIST);
+      // UTF-8, as counted
+      LineReader lr = new LineReader(url, Io.sm_MUST_EXIST, StandardCharsets.UTF_8);
       String line;
       StringBuilder err = new StringBuilder();
       for (int i = 1; (line = lr.readLine()) != null; ++i) {
@@ -167,10 +169,15 @@ class NGrams implements SharedIndexableInts {
          }
          ng = Io.parseEscape(ng, err);
          if (ng != null) {
-            ng = KeyPressList.parseTextAndTags(CrLf.normalize(ng), err).toString(KeyPress.Format.TXT);
+            ng = CrLf.normalize(ng);
+            // keys have no non-ascii chars, so such an ngram is taken as the
+            // chars themselves and can't have key tags
+            if (isAscii(ng)) {
+               ng = KeyPressList.parseTextAndTags(ng, err).toString(KeyPress.Format.TXT);
+            }
          }
 //System.out.println('|' + line + "| -> |" + ng + '|');
-         if ("empty".equals(ng) || !NGram.isValid(ng)) {
+         if ("empty".equals(ng) || !isValid(ng)) {
             Log.parseWarn(lr, 
                           ng == null || "empty".equals(ng) || "".equals(ng)
                           ? err.toString()
@@ -185,13 +192,27 @@ class NGrams implements SharedIndexableInts {
       return nGrams;
    }
    
+   ////////////////////////////////////////////////////////////////////////////
+   // n > 1 code points
+   private static boolean isValid(String chars) {
+      return chars != null && chars.codePointCount(0, chars.length()) > 1;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static boolean isAscii(String str) {
+      for (int i = 0; i < str.length(); ++i) {
+         if (str.charAt(i) >= 0x80) {
+            return false;
+         }
+      }
+      return true;
+   }
+
    // Data ////////////////////////////////////////////////////////////////////
    private final ArrayList<String> m_NGRAMS;
-   private final LookupSet m_RELEVANT;
-   private final LookupTable m_START;
-   private ArrayList<NGram> m_Current;
-   private ArrayList<Integer> m_CurrentIndex;
-   private ArrayList<Integer> m_Counts;
+   private final NGramMatcher m_MATCHER;
+   private long[] m_Counts;
+   private int m_State;
    private CrLf m_CrLf;
 
    // Main /////////////////////////////////////////////////////////////////////
@@ -0,0 +1,576 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * PartialCounts.java
+ */
+package pkp.chars;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import pkp.io.Io;
+import pkp.util.Log;
+
+////////////////////////////////////////////////////////////////////////////////
+// The counts of part of the input. Parts are counted from the initial state
+// so they can be counted independently, then joined in order. Joining
+// recounts the start of the later part from the state the earlier one ended
+// in, until the two agree, so the result is the same as counting the parts
+// one after the other. Input is UTF-8 and is counted by code point; a
+// sequence split between parts is finished by the recount.
+class PartialCounts {
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts into cc, ng and fng (either may be null), continuing from their
+   // state.
+   PartialCounts(CharCounts cc, NGrams ng, FrequentNGrams fng) {
+      m_CharCounts = cc;
+      m_NGrams = ng;
+      m_FrequentNGrams = fng;
+      m_Decoder = new Utf8Decoder();
+      m_Ranges = new ArrayList<Range>();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Empty counters like these, in the initial state.
+   PartialCounts createEmpty() {
+      return new PartialCounts(new CharCounts(m_CharCounts.hasBigramCounts()),
+                               m_NGrams == null ? null : new NGrams(m_NGrams),
+                               m_FrequentNGrams == null ? null : new FrequentNGrams(m_FrequentNGrams));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // A byte range of a file. Large files are split into ranges so that one
+   // file can be counted on several threads. A compressed file can't be
+   // split, but each entry of a zip file is a range of its own, counted
+   // from the start of its expanded bytes.
+   static class Range {
+
+      /////////////////////////////////////////////////////////////////////////
+      Range(File f, long start, long end, boolean last) {
+         this(f, null, start, end, last);
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      Range(File f, String entry, long start, long end, boolean last) {
+         m_File = f;
+         m_Entry = entry;
+         m_Start = start;
+         m_End = end;
+         m_Last = last;
+         m_Ignored = new boolean[128];
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // whether this range ends its file
+      boolean isLast() {
+         return m_Last;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // whether this range is read expanded rather than mapped
+      private boolean isCompressed() {
+         return m_Entry != null || Io.isCompressed(m_File.getName());
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      private String getName() {
+         return m_Entry == null ? m_File.getName() : m_File.getName() + '/' + m_Entry;
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final File m_File;
+      // the zip entry, if any
+      private final String m_Entry;
+      private final long m_Start;
+      private long m_End;
+      private boolean m_Last;
+      private final boolean[] m_Ignored;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Splits each file into ranges of at least sm_MIN_RANGE bytes, and into
+   // no more ranges than there are threads to count them.
+   static List<Range> split(List<File> files, int threads) {
+      List<Range> ranges = new ArrayList<Range>();
+      for (File f : files) {
+         if (Io.isCompressed(f.getName())) {
+            splitCompressed(f, ranges);
+            continue;
+         }
+         long size = f.length();
+         long step = Math.max(sm_MIN_RANGE, (size + threads - 1) / Math.max(threads, 1));
+         long start = 0;
+         for (; start + step < size; start += step) {
+            ranges.add(new Range(f, start, start + step, false));
+         }
+         // the last range reads to the end, whatever the size is by then
+         ranges.add(new Range(f, start, Long.MAX_VALUE, true));
+      }
+      return ranges;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Maps the range a window at a time so memory use does not depend on its
+   // size. The decoder and counters keep their own state so chars and
+   // ngrams that straddle windows are counted as if the file was read in
+   // one go.
+   void count(Range r) {
+      if (r.isCompressed()) {
+         countCompressed(r);
+         return;
+      }
+      FileInputStream fis = null;
+      try {
+         fis = new FileInputStream(r.m_File);
+      } catch (FileNotFoundException e) {
+         Log.err("Failed to open \"" + r.m_File.getPath() + '"');
+         return;
+      }
+      m_Ranges.add(r);
+      FileChannel fc = fis.getChannel();
+      try {
+         long end = Math.min(r.m_End, fc.size());
+         r.m_End = end;
+         // a range in the middle of a file may start inside a sequence that
+         // the previous range decodes
+         boolean started = r.m_Start == 0;
+         for (long pos = r.m_Start; pos < end; pos += sm_WINDOW_SIZE) {
+            ByteBuffer bb = fc.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(sm_WINDOW_SIZE, end - pos));
+            started = count(bb, r, started);
+         }
+         endFile(r);
+         fis.close();
+      } catch (IOException e) {
+         Log.err("Failed to read \"" + r.m_File.getPath() + '"');
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds next, which follows these counts.
+   void join(PartialCounts next) {
+      next.restate(this);
+      m_Decoder.setState(next.m_Decoder);
+      m_CharCounts.add(next.m_CharCounts);
+      m_CharCounts.setState(next.m_CharCounts);
+      if (m_NGrams != null) {
+         m_NGrams.add(next.m_NGrams);
+         m_NGrams.setState(next.m_NGrams);
+      }
+      if (m_FrequentNGrams != null) {
+         m_FrequentNGrams.add(next.m_FrequentNGrams);
+         m_FrequentNGrams.setState(next.m_FrequentNGrams);
+      }
+      for (Range r : next.m_Ranges) {
+         Range prev = m_Ranges.isEmpty() ? null : m_Ranges.get(m_Ranges.size() - 1);
+         if (prev != null && !prev.m_Last && prev.m_Entry == null
+          && prev.m_File.equals(r.m_File) && prev.m_End == r.m_Start) {
+            // rejoin the ranges of a file so its ignored bytes are logged once
+            prev.m_End = r.m_End;
+            prev.m_Last = r.m_Last;
+            for (int i = 0; i < prev.m_Ignored.length; ++i) {
+               prev.m_Ignored[i] |= r.m_Ignored[i];
+            }
+         } else {
+            m_Ranges.add(r);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Takes away other, which was joined to these counts.
+   void subtract(PartialCounts other) {
+      m_CharCounts.subtract(other.m_CharCounts);
+      if (m_NGrams != null) {
+         m_NGrams.subtract(other.m_NGrams);
+      }
+      if (m_FrequentNGrams != null) {
+         m_FrequentNGrams.subtract(other.m_FrequentNGrams);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts what f has gained past start, decoding with decoder, which
+   // holds where the last append of f left off. Returns where f ends now,
+   // or start if it can't be read.
+   long append(File f, long start, Utf8Decoder decoder) {
+      Utf8Decoder own = m_Decoder;
+      m_Decoder = decoder;
+      Range r = new Range(f, start, Long.MAX_VALUE, false);
+      count(r);
+      m_Decoder = own;
+      long end = m_Ranges.contains(r) ? r.m_End : start;
+      logIgnored();
+      return end;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds where each file read ends to ends.
+   void getEnds(Map<File, Long> ends) {
+      for (Range r : m_Ranges) {
+         if (r.m_Last) {
+            ends.put(r.m_File, r.m_End);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the ranges of f in order.
+   void countFile(File f) {
+      for (Range r : split(Collections.singletonList(f), 1)) {
+         count(r);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether anything was read.
+   boolean isCounted() {
+      return !m_Ranges.isEmpty();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The counts of a whole file, for reading back in place of recounting
+   // it. Ends where the file does, so the decoder is between sequences.
+   void write(ByteBuffer bb) {
+      long[] ignored = new long[2];
+      for (Range r : m_Ranges) {
+         for (int i = 0; i < r.m_Ignored.length; ++i) {
+            if (r.m_Ignored[i]) {
+               ignored[i / 64] |= 1L << (i % 64);
+            }
+         }
+      }
+      bb.putLong(ignored[0]);
+      bb.putLong(ignored[1]);
+      m_CharCounts.write(bb);
+      if (m_NGrams != null) {
+         m_NGrams.write(bb);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int writeSize() {
+      return 16 + m_CharCounts.writeSize() + (m_NGrams == null ? 0 : m_NGrams.writeSize());
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Empty counters like these holding what write() wrote for f, or null if
+   // it doesn't fit them.
+   PartialCounts read(ByteBuffer bb, File f) {
+      // joining may recount the start, which for a zip file may be in any of
+      // its entries
+      List<Range> ranges = Io.isCompressed(f.getName())
+                           ? split(Collections.singletonList(f), 1)
+                           : Collections.singletonList(new Range(f, 0, f.length(), true));
+      Range r = ranges.get(0);
+      PartialCounts pc = createEmpty();
+      try {
+         long[] ignored = new long[]{bb.getLong(), bb.getLong()};
+         for (int i = 0; i < r.m_Ignored.length; ++i) {
+            r.m_Ignored[i] = (ignored[i / 64] & (1L << (i % 64))) != 0;
+         }
+         if (!pc.m_CharCounts.read(bb)
+          || (pc.m_NGrams != null && !pc.m_NGrams.read(bb))) {
+            return null;
+         }
+      } catch (BufferUnderflowException e) {
+         return null;
+      }
+      pc.m_Ranges.addAll(ranges);
+      return pc;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void logIgnored() {
+      for (Range r : m_Ranges) {
+         String ig = "";
+         for (int i = 0; i < r.m_Ignored.length; ++i) {
+            if (r.m_Ignored[i]) {
+               ig += String.format(" 0x%x", i + 128);
+            }
+         }
+         if (!"".equals(ig)) {
+            Log.log("Count ignored the following bytes in " + r.getName() + ':' + ig);
+         }
+      }
+      m_Ranges.clear();
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // A sequence left unfinished at the end of a file or zip entry is
+   // dropped, so the next starts afresh.
+   private void endFile(Range r) {
+      if ((r.m_Last || r.m_Entry != null) && m_Decoder.isPending()) {
+         r.m_Ignored[m_Decoder.getLead() - 128] = true;
+         m_Decoder = new Utf8Decoder();
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds a range for each entry of zip file f, or one for all of any other
+   // compressed file.
+   private static void splitCompressed(File f, List<Range> ranges) {
+      if (f.getName().toLowerCase().endsWith(".zip")) {
+         List<String> entries = new ArrayList<String>();
+         try {
+            ZipFile zf = new ZipFile(f);
+            for (Enumeration<? extends ZipEntry> en = zf.entries(); en.hasMoreElements();) {
+               ZipEntry e = en.nextElement();
+               if (!e.isDirectory()) {
+                  entries.add(e.getName());
+               }
+            }
+            zf.close();
+         } catch (IOException e) {
+            Log.err("Failed to read \"" + f.getPath() + "\": " + e);
+            return;
+         }
+         for (int i = 0; i < entries.size(); ++i) {
+            ranges.add(new Range(f, entries.get(i), 0, Long.MAX_VALUE, i == entries.size() - 1));
+         }
+         return;
+      }
+      ranges.add(new Range(f, 0, Long.MAX_VALUE, true));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The expanded bytes of r, which is compressed.
+   private static InputStream open(Range r) throws IOException {
+      if (r.m_Entry == null) {
+         return Io.openInputStream(r.m_File);
+      }
+      final ZipFile zf = new ZipFile(r.m_File);
+      ZipEntry e = zf.getEntry(r.m_Entry);
+      if (e == null) {
+         zf.close();
+         throw new FileNotFoundException(r.getName());
+      }
+      return new FilterInputStream(zf.getInputStream(e)) {
+         @Override
+         public void close() throws IOException {
+            super.close();
+            zf.close();
+         }
+      };
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts r a buffer at a time as it is expanded.
+   private void countCompressed(Range r) {
+      InputStream in = null;
+      try {
+         in = open(r);
+      } catch (IOException e) {
+         Log.err("Failed to open \"" + r.getName() + "\": " + e);
+         return;
+      }
+      m_Ranges.add(r);
+      try {
+         byte[] buf = new byte[sm_EXPAND_BUFFER_SIZE];
+         long end = 0;
+         boolean started = true;
+         for (int n; (n = in.read(buf)) != -1;) {
+            started = count(ByteBuffer.wrap(buf, 0, n), r, started);
+            end += n;
+         }
+         r.m_End = end;
+         endFile(r);
+      } catch (IOException e) {
+         Log.err("Failed to read \"" + r.getName() + "\": " + e);
+      } finally {
+         try {
+            in.close();
+         } catch (IOException e) {}
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Counts the bytes of bb, which are in r. started is whether a char of
+   // r has been decoded yet, and is returned updated.
+   private boolean count(ByteBuffer bb, Range r, boolean started) {
+      while (bb.hasRemaining()) {
+         int b = bb.get() & 0xFF;
+         if (b < 0x80 && !m_Decoder.isPending()) {
+            // ascii needs no decoding
+            nextChar(b);
+            continue;
+         }
+         int c = m_Decoder.next(b);
+         int dropped = m_Decoder.takeDropped();
+         if (dropped != -1 && started) {
+            r.m_Ignored[dropped - 128] = true;
+         }
+         if (c != Utf8Decoder.sm_MORE) {
+            started = true;
+            nextChar(c);
+         }
+      }
+      return started;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void nextChar(int c) {
+      m_CharCounts.nextChar(c);
+      if (m_NGrams != null) {
+         m_NGrams.nextChar(c);
+      }
+      if (m_FrequentNGrams != null) {
+         m_FrequentNGrams.nextChar(c);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private boolean isSameState(PartialCounts other) {
+      return m_Decoder.isSameState(other.m_Decoder)
+          && m_CharCounts.isSameState(other.m_CharCounts)
+          && (m_NGrams == null || m_NGrams.isSameState(other.m_NGrams))
+          && (m_FrequentNGrams == null || m_FrequentNGrams.isSameState(other.m_FrequentNGrams));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void setState(PartialCounts other) {
+      m_Decoder.setState(other.m_Decoder);
+      m_CharCounts.setState(other.m_CharCounts);
+      if (m_NGrams != null) {
+         m_NGrams.setState(other.m_NGrams);
+      }
+      if (m_FrequentNGrams != null) {
+         m_FrequentNGrams.setState(other.m_FrequentNGrams);
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // These counts assumed the initial state, but follow prior. Recount the
+   // start both ways until the states agree and apply the difference.
+   private void restate(PartialCounts prior) {
+      if (m_Ranges.isEmpty()) {
+         return;
+      }
+      PartialCounts assumed = createEmpty();
+      PartialCounts actual = createEmpty();
+      actual.setState(prior);
+      boolean agreed = false;
+      for (int i = 0; i < m_Ranges.size() && !agreed; ++i) {
+         Range r = m_Ranges.get(i);
+         agreed = recount(r, assumed, actual);
+         if (!agreed && (r.m_Last || r.m_Entry != null)) {
+            // as counting did, start the next afresh
+            assumed.m_Decoder = new Utf8Decoder();
+            actual.m_Decoder = new Utf8Decoder();
+            agreed = actual.isSameState(assumed);
+         }
+      }
+      m_CharCounts.subtract(assumed.m_CharCounts);
+      m_CharCounts.add(actual.m_CharCounts);
+      if (m_NGrams != null) {
+         m_NGrams.subtract(assumed.m_NGrams);
+         m_NGrams.add(actual.m_NGrams);
+      }
+      if (m_FrequentNGrams != null) {
+         m_FrequentNGrams.subtract(assumed.m_FrequentNGrams);
+         m_FrequentNGrams.add(actual.m_FrequentNGrams);
+      }
+      if (!agreed) {
+         // they never agreed so we end where actual did
+         setState(actual);
+         endFile(m_Ranges.get(m_Ranges.size() - 1));
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // returns true once assumed and actual agree
+   private static boolean recount(Range r, PartialCounts assumed, PartialCounts actual) {
+      if (r.isCompressed()) {
+         return recountCompressed(r, assumed, actual);
+      }
+      try {
+         FileInputStream fis = new FileInputStream(r.m_File);
+         FileChannel fc = fis.getChannel();
+         // read a little at a time as the states usually agree within a few bytes
+         long window = sm_RECOUNT_WINDOW;
+         for (long pos = r.m_Start; pos < r.m_End; pos += window, window = sm_WINDOW_SIZE) {
+            ByteBuffer bb = fc.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(window, r.m_End - pos));
+            if (recount(bb, assumed, actual)) {
+               fis.close();
+               return true;
+            }
+         }
+         fis.close();
+      } catch (IOException e) {
+         Log.err("Failed to reread \"" + r.m_File.getPath() + '"');
+      }
+      return actual.isSameState(assumed);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static boolean recountCompressed(Range r, PartialCounts assumed, PartialCounts actual) {
+      InputStream in = null;
+      try {
+         in = open(r);
+         byte[] buf = new byte[(int)sm_RECOUNT_WINDOW];
+         for (int n; (n = in.read(buf)) != -1;) {
+            if (recount(ByteBuffer.wrap(buf, 0, n), assumed, actual)) {
+               return true;
+            }
+         }
+      } catch (IOException e) {
+         Log.err("Failed to reread \"" + r.getName() + "\": " + e);
+      } finally {
+         if (in != null) {
+            try {
+               in.close();
+            } catch (IOException e) {}
+         }
+      }
+      return actual.isSameState(assumed);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Recounts bb both ways, returns true once assumed and actual agree.
+   private static boolean recount(ByteBuffer bb, PartialCounts assumed, PartialCounts actual) {
+      while (bb.hasRemaining()) {
+         if (actual.isSameState(assumed)) {
+            return true;
+         }
+         int b = bb.get() & 0xFF;
+         int c = assumed.m_Decoder.next(b);
+         if (c != Utf8Decoder.sm_MORE) {
+            assumed.nextChar(c);
+         }
+         c = actual.m_Decoder.next(b);
+         if (c != Utf8Decoder.sm_MORE) {
+            actual.nextChar(c);
+         }
+      }
+      return false;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   // bytes mapped at a time
+   private static final long sm_WINDOW_SIZE = 1 << 24;
+   private static final long sm_RECOUNT_WINDOW = 1 << 12;
+   // bytes expanded at a time
+   private static final int sm_EXPAND_BUFFER_SIZE = 1 << 16;
+   // smallest range worth counting on its own thread
+   private static final long sm_MIN_RANGE = 1 << 22;
+   private CharCounts m_CharCounts;
+   private NGrams m_NGrams;
+   private FrequentNGrams m_FrequentNGrams;
+   private Utf8Decoder m_Decoder;
+   private List<Range> m_Ranges;
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * SparseCounts.java
+ */
+package pkp.chars;
+
+import java.nio.ByteBuffer;
+
+////////////////////////////////////////////////////////////////////////////////
+// Counts of long keys in an open addressing table that grows with the
+// number of keys counted, for key spaces too large for an array. Key 0 is
+// not allowed, it marks an empty slot. Slots are indexes for iterating and
+// change as the table grows.
+class SparseCounts {
+
+   ////////////////////////////////////////////////////////////////////////////
+   SparseCounts() {
+      m_Keys = new long[sm_INITIAL_SLOTS];
+      m_Counts = new long[sm_INITIAL_SLOTS];
+      m_Size = 0;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int size() {
+      return m_Size;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int getSlots() {
+      return m_Keys.length;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // 0 if the slot is empty
+   long getKey(int slot) {
+      return m_Keys[slot];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   long getSlotCount(int slot) {
+      return m_Counts[slot];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   long getCount(long key) {
+      return m_Counts[find(key)];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void add(long key, long count) {
+      int s = find(key);
+      if (m_Keys[s] == 0) {
+         if ((m_Size + 1) * 2 > m_Keys.length) {
+            grow();
+            s = find(key);
+         }
+         m_Keys[s] = key;
+         ++m_Size;
+      }
+      m_Counts[s] += count;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void add(SparseCounts other) {
+      for (int s = 0; s < other.m_Keys.length; ++s) {
+         if (other.m_Keys[s] != 0) {
+            add(other.m_Keys[s], other.m_Counts[s]);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Keys counted down to 0 are kept.
+   void subtract(SparseCounts other) {
+      for (int s = 0; s < other.m_Keys.length; ++s) {
+         if (other.m_Keys[s] != 0) {
+            add(other.m_Keys[s], -other.m_Counts[s]);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The keys counted as a count, then key and count pairs.
+   void write(ByteBuffer bb) {
+      bb.putInt(m_Size);
+      for (int s = 0; s < m_Keys.length; ++s) {
+         if (m_Keys[s] != 0) {
+            bb.putLong(m_Keys[s]);
+            bb.putLong(m_Counts[s]);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int writeSize() {
+      return 4 + 16 * m_Size;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds what write() wrote.
+   void read(ByteBuffer bb) {
+      int size = bb.getInt();
+      for (int i = 0; i < size; ++i) {
+         long key = bb.getLong();
+         long count = bb.getLong();
+         if (key != 0) {
+            add(key, count);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Writes the non zero counts of a dense array the same way.
+   static void write(ByteBuffer bb, long[] counts) {
+      bb.putInt(countNonZero(counts));
+      for (int i = 0; i < counts.length; ++i) {
+         if (counts[i] != 0) {
+            bb.putLong(i);
+            bb.putLong(counts[i]);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   static int writeSize(long[] counts) {
+      return 4 + 16 * countNonZero(counts);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Adds what write() wrote to counts. Returns false if an index is out of
+   // range.
+   static boolean read(ByteBuffer bb, long[] counts) {
+      int size = bb.getInt();
+      for (int i = 0; i < size; ++i) {
+         long index = bb.getLong();
+         long count = bb.getLong();
+         if (index < 0 || index >= counts.length) {
+            return false;
+         }
+         counts[(int)index] += count;
+      }
+      return true;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static int countNonZero(long[] counts) {
+      int n = 0;
+      for (long c : counts) {
+         if (c != 0) {
+            ++n;
+         }
+      }
+      return n;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The slot holding key, or the empty slot where it would go.
+   private int find(long key) {
+      int mask = m_Keys.length - 1;
+      // spread neighbouring keys over the table
+      long h = key * 0x9E3779B97F4A7C15L;
+      int s = (int)(h >>> 32) & mask;
+      while (m_Keys[s] != 0 && m_Keys[s] != key) {
+         s = (s + 1) & mask;
+      }
+      return s;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void grow() {
+      long[] keys = m_Keys;
+      long[] counts = m_Counts;
+      m_Keys = new long[keys.length * 2];
+      m_Counts = new long[keys.length * 2];
+      for (int s = 0; s < keys.length; ++s) {
+         if (keys[s] != 0) {
+            int to = find(keys[s]);
+            m_Keys[to] = keys[s];
+            m_Counts[to] = counts[s];
+         }
+      }
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   // a power of 2
+   private static final int sm_INITIAL_SLOTS = 1 << 6;
+   private long[] m_Keys;
+   private long[] m_Counts;
+   private int m_Size;
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * Utf8Decoder.java
+ */
+package pkp.chars;
+
+////////////////////////////////////////////////////////////////////////////////
+// Turns UTF-8 a byte at a time into code points. The bytes of a sequence
+// may arrive in different reads. Bytes that are not well formed UTF-8
+// (overlong, surrogate, out of range or cut short) are dropped, and the
+// first of them is kept for the caller to report.
+class Utf8Decoder {
+
+   ////////////////////////////////////////////////////////////////////////////
+   // next() needs more bytes
+   static final int sm_MORE = -1;
+
+   ////////////////////////////////////////////////////////////////////////////
+   Utf8Decoder() {
+      m_CodePoint = 0;
+      m_Needed = 0;
+      m_Check = 0;
+      m_Lead = 0;
+      m_Dropped = -1;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   Utf8Decoder(Utf8Decoder other) {
+      setState(other);
+      m_Dropped = -1;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Returns the code point b completes, or sm_MORE.
+   int next(int b) {
+      if (m_Needed > 0) {
+         if (isContinuation(b)) {
+            m_CodePoint = (m_CodePoint << 6) | (b & 0x3F);
+            m_Check = 0;
+            return --m_Needed == 0 ? m_CodePoint : sm_MORE;
+         }
+         // cut short, b starts afresh
+         drop(m_Lead);
+         m_Needed = 0;
+      }
+      if (b < 0x80) {
+         return b;
+      }
+      if (b >= 0xC2 && b <= 0xDF) {
+         m_Needed = 1;
+         m_CodePoint = b & 0x1F;
+      } else if (b >= 0xE0 && b <= 0xEF) {
+         m_Needed = 2;
+         m_CodePoint = b & 0x0F;
+      } else if (b >= 0xF0 && b <= 0xF4) {
+         m_Needed = 3;
+         m_CodePoint = b & 0x07;
+      } else {
+         drop(b);
+         return sm_MORE;
+      }
+      m_Lead = b;
+      m_Check = b;
+      return sm_MORE;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The first byte dropped since the last call, or -1.
+   int takeDropped() {
+      int dropped = m_Dropped;
+      m_Dropped = -1;
+      return dropped;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether a sequence has been started and not finished.
+   boolean isPending() {
+      return m_Needed > 0;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The lead byte of the unfinished sequence, if pending.
+   int getLead() {
+      return m_Lead;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether both will decode whatever comes next the same way.
+   boolean isSameState(Utf8Decoder other) {
+      return m_Needed == other.m_Needed
+          && (m_Needed == 0
+           || (m_CodePoint == other.m_CodePoint && m_Check == other.m_Check));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void setState(Utf8Decoder other) {
+      m_CodePoint = other.m_CodePoint;
+      m_Needed = other.m_Needed;
+      m_Check = other.m_Check;
+      m_Lead = other.m_Lead;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether b can follow the bytes so far. After some leads only part of
+   // the continuation range is well formed.
+   private boolean isContinuation(int b) {
+      switch (m_Check) {
+      case 0xE0: return b >= 0xA0 && b <= 0xBF;
+      case 0xED: return b >= 0x80 && b <= 0x9F;
+      case 0xF0: return b >= 0x90 && b <= 0xBF;
+      case 0xF4: return b >= 0x80 && b <= 0x8F;
+      default: return b >= 0x80 && b <= 0xBF;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void drop(int b) {
+      if (m_Dropped == -1) {
+         m_Dropped = b;
+      }
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   // the bits decoded so far
+   private int m_CodePoint;
+   // continuation bytes still to come
+   private int m_Needed;
+   // the lead byte while its first continuation byte is awaited, else 0
+   private int m_Check;
+   // the lead byte of the sequence
+   private int m_Lead;
+   private int m_Dropped;
+}
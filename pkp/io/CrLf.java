@@ -5,6 +5,8 @@
  */
 package pkp.io;
 
+import java.nio.ByteBuffer;
+
 ///////////////////////////////////////////////////////////////////////////////
 public class CrLf {
 
@@ -32,12 +34,51 @@ public class CrLf {
    }
 
    ////////////////////////////////////////////////////////////////////////////
-   public char getPrev() {
+   public CrLf(CrLf other) {
+      m_Skip = other.m_Skip;
+      m_Prev = other.m_Prev;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Reads the state write() wrote.
+   public CrLf(ByteBuffer bb) {
+      m_Skip = bb.get() != 0;
+      m_Prev = bb.getInt();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public void write(ByteBuffer bb) {
+      bb.put((byte)(m_Skip ? 1 : 0));
+      bb.putInt(m_Prev);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public static int writeSize() {
+      return 5;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether both will treat whatever comes next the same way.
+   // m_Skip is only consulted after \r or \n.
+   public boolean isSameState(CrLf other) {
+      return m_Prev == other.m_Prev
+          && (m_Skip == other.m_Skip
+           || (m_Prev != '\r' && m_Prev != '\n'));
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public int getPrev() {
       return m_Prev;
    }
 
    ////////////////////////////////////////////////////////////////////////////
    public char next(char c) {
+      return (char)next((int)c);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // c is a code point, returns 0 for none.
+   public int next(int c) {
       if (c != '\r' && c != '\n') {
          m_Prev = c;
          return c;
@@ -56,7 +97,7 @@ public class CrLf {
 
    ////////////////////////////////////////////////////////////////////////////
    private boolean m_Skip;
-   private char m_Prev;
+   private int m_Prev;
 
    // Main /////////////////////////////////////////////////////////////////////
    public static void main(String[] argv) {
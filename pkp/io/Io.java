@@ -8,7 +8,9 @@ package pkp.io;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -16,7 +18,11 @@ import java.io.FileWriter;
 import java.net.URL;
 import java.net.MalformedURLException;
 import java.net.URLClassLoader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.CodeSource;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipEntry;
 import java.util.ArrayList;
@@ -34,6 +40,7 @@ public class Io {
    public static final String sm_WS = "   ";
    public static final String sm_DIGIT = "0123456789";
    public static final String sm_HEX_DIGIT = "0123456789abcdefABCDEF";
+   private static final int sm_EXPAND_BUFFER_SIZE = 1 << 16;
 
    ////////////////////////////////////////////////////////////////////////////
    public static int read(String prompt) {
@@ -286,6 +293,67 @@ public class Io {
       }
    }
 
+   ////////////////////////////////////////////////////////////////////////////
+   // Writes the first length of data to a temporary file that then replaces
+   // f, so f is whole or as it was.
+   public static boolean replace(File f, byte[] data, int length) {
+      File tmp = new File(f.getPath() + ".tmp");
+      FileOutputStream fos = null;
+      try {
+         fos = new FileOutputStream(tmp);
+      } catch (FileNotFoundException e) {
+         Log.warn("Failed to open: \"" + tmp.getPath() + "\".");
+         return false;
+      }
+      try {
+         fos.write(data, 0, length);
+         fos.flush();
+         fos.getFD().sync();
+         fos.close();
+      } catch (IOException e) {
+         Log.warn("Failed to write: \"" + tmp.getPath() + "\".");
+         return false;
+      }
+      try {
+         try {
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE);
+         } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         }
+      } catch (IOException e) {
+         Log.warn("Failed to replace: \"" + f.getPath() + "\".");
+         return false;
+      }
+      return true;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Whether name is of a gzip or zip file, which openInputStream() expands.
+   public static boolean isCompressed(String name) {
+      String lower = name.toLowerCase();
+      return lower.endsWith(".gz") || lower.endsWith(".zip");
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The contents of f, expanded if it is compressed.
+   public static InputStream openInputStream(File f) throws IOException {
+      return expand(new FileInputStream(f), f.getName());
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Expands in if name is of a compressed file. The files in a zip file are
+   // read one after the other.
+   public static InputStream expand(InputStream in, String name) throws IOException {
+      String lower = name.toLowerCase();
+      if (lower.endsWith(".gz")) {
+         return new GZIPInputStream(in, sm_EXPAND_BUFFER_SIZE);
+      }
+      if (lower.endsWith(".zip")) {
+         return new ZipEntriesInputStream(new ZipInputStream(in));
+      }
+      return in;
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    public static List<String> split(String str, char c) {
       String ch = String.valueOf(c);
@@ -710,6 +778,57 @@ public class Io {
 
    // Private /////////////////////////////////////////////////////////////////
 
+   ////////////////////////////////////////////////////////////////////////////
+   // Reads past the end of each entry to the next.
+   private static class ZipEntriesInputStream extends InputStream {
+
+      /////////////////////////////////////////////////////////////////////////
+      ZipEntriesInputStream(ZipInputStream zis) {
+         m_In = zis;
+         m_InEntry = false;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      public int read() throws IOException {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0) {
+            return 0;
+         }
+         for (;;) {
+            if (!m_InEntry) {
+               ZipEntry e = m_In.getNextEntry();
+               if (e == null) {
+                  return -1;
+               }
+               m_InEntry = !e.isDirectory();
+               continue;
+            }
+            int n = m_In.read(b, off, len);
+            if (n != -1) {
+               return n;
+            }
+            m_InEntry = false;
+         }
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      public void close() throws IOException {
+         m_In.close();
+      }
+
+      // Data //////////////////////////////////////////////////////////////////
+      private final ZipInputStream m_In;
+      private boolean m_InEntry;
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    private static class CharIntPair {
       CharIntPair(char c, int i) {
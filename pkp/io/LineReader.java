@@ -9,6 +9,7 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import pkp.string.StringSource;
 import pkp.string.StringInt;
 import pkp.util.NamedOrdered;
@@ -25,6 +26,11 @@ public class LineReader implements StringSource, NamedOrdered {
 
    ////////////////////////////////////////////////////////////////////////////
    public LineReader(URL url, boolean mustExist) {
+      this(url, mustExist, Charset.defaultCharset());
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public LineReader(URL url, boolean mustExist, Charset charset) {
       m_StripComment = true;
       m_Url = url;
       if (m_Url == null) {
@@ -34,7 +40,7 @@ public class LineReader implements StringSource, NamedOrdered {
          return;
       }
       try {
-         m_In = new BufferedReader(new InputStreamReader(m_Url.openStream()));
+         m_In = new BufferedReader(new InputStreamReader(Io.expand(m_Url.openStream(), m_Url.getPath()), charset));
       } catch (IOException e) {
          if (mustExist) {
             Log.err(getClass().getName() + " failed to open \"" + m_Url.getPath() + "\".");
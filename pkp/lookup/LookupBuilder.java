@@ -6,6 +6,7 @@
 package pkp.lookup;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import pkp.util.Log;
 
 ///////////////////////////////////////////////////////////////////////////////
@@ -25,6 +26,7 @@ public class LookupBuilder {
       m_Offset = offset;
       m_Lookup = new ArrayList<ArrayList<Integer>>(tableSize);
       m_Overflow = new ArrayList<ArrayList<Integer>>();
+      m_OverflowEntries = new HashMap<Integer, ArrayList<Integer>>();
       for (int i = 0; i < tableSize; ++i) {
          m_Lookup.add(new ArrayList<Integer>());
       }
@@ -54,18 +56,11 @@ public class LookupBuilder {
          entry = m_Lookup.get(key1);
       } else {
 //System.out.printf("add: %d %d: %d \n", key1, key2, index);
-         for (int i = 0; ; ++i) {
-            if (i >= m_Overflow.size()) {
-//System.out.printf("add: m_Overflow.add(%d) %d%n", i, key1);
-               entry = new ArrayList<Integer>();
-               m_Overflow.add(entry);
-               break;
-            }
-            entry = m_Overflow.get(i);
-            if (key1 == entry.get(0)) {
-//System.out.printf("add: m_Overflow.get(%d) %d%n", i, key1);
-               break;
-            }
+         entry = m_OverflowEntries.get(key1);
+         if (entry == null) {
+            entry = new ArrayList<Integer>();
+            m_Overflow.add(entry);
+            m_OverflowEntries.put(key1, entry);
          }
       }
       if (entry.size() == 0) {
@@ -184,6 +179,8 @@ public class LookupBuilder {
    protected int m_Offset;
    protected ArrayList<ArrayList<Integer>> m_Lookup;
    protected ArrayList<ArrayList<Integer>> m_Overflow;
+   // m_Overflow by key
+   private HashMap<Integer, ArrayList<Integer>> m_OverflowEntries;
    protected int m_ScanSize;
    protected Duplicates m_Duplicates;
    private String m_Msg;
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * LookupCursor.java
+ */
+package pkp.lookup;
+
+///////////////////////////////////////////////////////////////////////////////
+// Steps through the values a LookupTable holds for a key without allocating.
+// Reuse one cursor for any number of lookups:
+//    if (table.getAll(key1, key2, cursor)) {
+//       while (cursor.next()) { ... cursor.getValue() ... }
+//    }
+public class LookupCursor {
+
+   ////////////////////////////////////////////////////////////////////////////
+   public LookupCursor() {
+      clear();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // move to the next value, false when there are no more
+   public boolean next() {
+      if (m_Scan == null) {
+         if (m_Single) {
+            m_Single = false;
+            return true;
+         }
+         return false;
+      }
+      for (; m_Next < m_End; m_Next += 2) {
+         if (m_Scan[m_Next] == m_Key2) {
+            m_Value = m_Scan[m_Next + 1];
+            m_Next += 2;
+            return true;
+         }
+      }
+      return false;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public int getValue() {
+      return m_Value;
+   }
+
+   // Package /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   void clear() {
+      m_Scan = null;
+      m_Single = false;
+      m_Value = LookupTable.sm_NO_VALUE;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void set(int value) {
+      clear();
+      m_Single = true;
+      m_Value = value;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // the key2, value pairs in scan from first up to end
+   void set(int[] scan, int first, int end, int key2) {
+      clear();
+      m_Scan = scan;
+      m_Next = first;
+      m_End = end;
+      m_Key2 = key2;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private int[] m_Scan;
+   private int m_Next;
+   private int m_End;
+   private int m_Key2;
+   private boolean m_Single;
+   private int m_Value;
+}
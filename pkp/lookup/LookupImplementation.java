@@ -10,6 +10,7 @@
 package pkp.lookup;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import pkp.util.Log;
 
 ///////////////////////////////////////////////////////////////////////////////
@@ -23,7 +24,14 @@ class LookupImplementation implements LookupTable, LookupSet {
 //System.out.printf("create: tableSize %d scanSize %d overflowSize %d\n", tableSize, scanSize, overflowSize);
 	   m_Offset = offset;
 	   m_Lookup = new int[tableSize];
-      m_Overflow = new int[overflowSize * 2];
+      // open addressing, at most half full so probes are short
+      int slots = 0;
+      if (overflowSize > 0) {
+         slots = Integer.highestOneBit(overflowSize) * 4;
+      }
+      m_OverflowKeys = new int[slots];
+      m_OverflowValues = new int[slots];
+      Arrays.fill(m_OverflowValues, sm_NO_VALUE);
       m_OverflowUsed = 0;
       if (scanSize > 0) {
          // skip m_Scan[0] as a 0 in m_Lookup means its empty
@@ -62,15 +70,15 @@ class LookupImplementation implements LookupTable, LookupSet {
          }
       } else {
 //System.out.printf("add1: m_OverflowUsed %d%n", m_OverflowUsed);
-         if (m_OverflowUsed + 2 > m_Overflow.length) {
-            Log.err(String.format("m_Overflow.length %d m_OverflowUsed %d\n", m_Overflow.length, m_OverflowUsed));
+         if (m_OverflowUsed + 2 > m_OverflowKeys.length) {
+            Log.err(String.format("m_OverflowKeys.length %d m_OverflowUsed %d\n", m_OverflowKeys.length, m_OverflowUsed));
          }
-         m_Overflow[m_OverflowUsed++] = key;
+         m_OverflowUsed += 2;
          if (size == 3 && scanValues.get(1) == sm_NO_VALUE) {
-            m_Overflow[m_OverflowUsed++] = scanValues.get(2);
+            putOverflow(key, scanValues.get(2));
             return;
          } else {
-            m_Overflow[m_OverflowUsed++] = -m_ScanUsed;
+            putOverflow(key, -m_ScanUsed);
          }
       }
 //System.out.printf("add1: m_Scan[%d++] (length %d) = %d (size)\n", m_ScanUsed, m_Scan.length, size);
@@ -92,9 +100,13 @@ class LookupImplementation implements LookupTable, LookupSet {
 //System.out.printf("get: m_Lookup[%d] %d%n", key1, m_Lookup[key1]);
          return m_Lookup[key1];
       }
-      for (int i = 0; i < m_Overflow.length; i += 2) {
-         if (m_Overflow[i] == key1) {
-            return m_Overflow[i + 1];
+      if (m_OverflowKeys.length == 0) {
+         return sm_NO_VALUE;
+      }
+      int mask = m_OverflowKeys.length - 1;
+      for (int i = hash(key1) & mask; m_OverflowValues[i] != sm_NO_VALUE; i = (i + 1) & mask) {
+         if (m_OverflowKeys[i] == key1) {
+            return m_OverflowValues[i];
          }
       }
       return sm_NO_VALUE;
@@ -143,41 +155,32 @@ class LookupImplementation implements LookupTable, LookupSet {
    }
 
    ////////////////////////////////////////////////////////////////////////////
-   // return all matching indices
+   // point cursor at all matching indices, false if there are none
    @Override // LookupTable
-   public int[] getAll(int key1, int key2) {
-//System.out.printf("getAll: key1 0x%x, key2 0x%x\n", key1, key2);
+   public boolean getAll(int key1, int key2, LookupCursor cursor) {
       int found = get(key1);
-//System.out.printf("getAll: found %x\n", found);
       if (found >= 0) {
          if (key2 == sm_NO_VALUE) {
-//System.out.printf("getAll: found %x\n", found);
-            return new int[] {2, found};
+            cursor.set(found);
+            return true;
          }
-//System.out.println("getAll: return null 1");
-         return null;
+         cursor.clear();
+         return false;
       }
       if (found == sm_NO_VALUE) {
-//System.out.println("getAll: return null 2");
-         return null;
+         cursor.clear();
+         return false;
       }
       int start = -found;
       int size = getSize(start);
-      int[] all = new int[size / 2 + 1];
-      int j = 0;
       for (int i = 1; i < size; i += 2) {
-//System.out.printf("getAll found: key2 %d: %d\n", m_Scan[start + i], m_Scan[start + i + 1]);
          if (m_Scan[start + i] == key2) {
-//System.out.printf("getAll found: %d\n", m_Scan[start + i + 1]);
-            all[++j] = m_Scan[start + i + 1];
+            cursor.set(m_Scan, start + i, start + size, key2);
+            return true;
          }
       }
-      if (j == 0) {
-//System.out.println("getAll: return null 3");
-         return null;
-      }
-      all[0] = j + 1;
-      return all;
+      cursor.clear();
+      return false;
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -187,8 +190,10 @@ class LookupImplementation implements LookupTable, LookupSet {
          int k = i + m_Offset;
          str += foundToString(k, get(k));
       }
-      for (int i = 0; i < m_OverflowUsed; i += 2) {
-         str += foundToString(m_Overflow[i] + m_Offset, m_Overflow[i + 1]);
+      for (int i = 0; i < m_OverflowKeys.length; ++i) {
+         if (m_OverflowValues[i] != sm_NO_VALUE) {
+            str += foundToString(m_OverflowKeys[i] + m_Offset, m_OverflowValues[i]);
+         }
       }
       return str;
    }
@@ -201,6 +206,29 @@ class LookupImplementation implements LookupTable, LookupSet {
       
    // Private /////////////////////////////////////////////////////////////////
 
+   ////////////////////////////////////////////////////////////////////////////
+   // spreads nearby keys across the slots
+   private static int hash(int key) {
+      int h = key * 0x9e3779b9;
+      return h ^ (h >>> 16);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // linear probing, sm_NO_VALUE marks an empty slot
+   private void putOverflow(int key, int value) {
+      if (value == sm_NO_VALUE) {
+         // same as absent
+         return;
+      }
+      int mask = m_OverflowKeys.length - 1;
+      int i = hash(key) & mask;
+      while (m_OverflowValues[i] != sm_NO_VALUE && m_OverflowKeys[i] != key) {
+         i = (i + 1) & mask;
+      }
+      m_OverflowKeys[i] = key;
+      m_OverflowValues[i] = value;
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    private String foundToString(int k, int found) {
 //System.out.printf("foundToString: k %d found %d\n", k, found);
@@ -244,7 +272,9 @@ class LookupImplementation implements LookupTable, LookupSet {
    // Data ////////////////////////////////////////////////////////////////////
    private int m_Offset;
    private int[] m_Lookup;
-   private int[] m_Overflow;
+   // keys outside m_Lookup, hashed
+   private int[] m_OverflowKeys;
+   private int[] m_OverflowValues;
    private int m_OverflowUsed;
    private int[] m_Scan;
    private int m_ScanUsed;
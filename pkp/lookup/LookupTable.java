@@ -18,8 +18,9 @@ public interface LookupTable {
    ////////////////////////////////////////////////////////////////////////////
    public int get(int key);
    public int get(int key1, int key2);
-   // returns an array with element 0 the valid length
+   // points cursor at all the values for the keys and returns
+   // false if there are none
    // key2 may be NO_VALUE
-   public int[] getAll(int key1, int key2);
+   public boolean getAll(int key1, int key2, LookupCursor cursor);
    public String toString();
 }
@@ -6,19 +6,20 @@
 package pkp.lookup;
 
 import java.util.ArrayList;
+import pkp.util.IndexSort;
 
 ////////////////////////////////////////////////////////////////////////////////
 public class SharedIndex {
    
    ////////////////////////////////////////////////////////////////////////////
-   public static SharedIndex create(SharedIndexableInts si, int first, int last) {
+   public static SharedIndex create(SharedIndexableInts si, long first, long last) {
       ArrayList<SharedIndexableInts> sil = new ArrayList<SharedIndexableInts>(1);
       sil.add(si);
       return new SharedIndex(sil, first, last);
    }
    
    ////////////////////////////////////////////////////////////////////////////
-   public static SharedIndex create(ArrayList<SharedIndexableInts> sil, int first, int last) {
+   public static SharedIndex create(ArrayList<SharedIndexableInts> sil, long first, long last) {
       return new SharedIndex(sil, first, last);
    }
    
@@ -35,13 +36,24 @@ public class SharedIndex {
    }
    
    ///////////////////////////////////////////////////////////////////////////////
-   public int getValue(int i) {
+   // The counter of the ith value, and its index there.
+   public SharedIndexableInts getCounter(int i) {
+      return m_Sic.get(m_CounterIndex[m_Index[i]]);
+   }
+
+   ///////////////////////////////////////////////////////////////////////////////
+   public int getOffset(int i) {
+      return m_Offset[m_Index[i]];
+   }
+
+   ///////////////////////////////////////////////////////////////////////////////
+   public long getValue(int i) {
       return m_Values[m_Index[i]];
    }
    
    ///////////////////////////////////////////////////////////////////////////////
-   public int getMax() {
-      int max = -Integer.MAX_VALUE;
+   public long getMax() {
+      long max = -Long.MAX_VALUE;
       for (int i = 0; i < m_Values.length; ++i) {
          max = Math.max(max, m_Values[i]);
       }
@@ -88,7 +100,7 @@ public class SharedIndex {
       int maxDigits = 1;
       for (int i = 0; i < m_Values.length; ++i) {
          int digits = 0;
-         for (int val = m_Values[i]; val > 0; val /= 10) {
+         for (long val = m_Values[i]; val > 0; val /= 10) {
             ++digits;
          }
          if (digits > maxDigits) {
@@ -106,12 +118,12 @@ public class SharedIndex {
    // Private /////////////////////////////////////////////////////////////////
 
    ////////////////////////////////////////////////////////////////////////////
-   private SharedIndex(ArrayList<SharedIndexableInts> sic, int first, int last) {
+   private SharedIndex(ArrayList<SharedIndexableInts> sic, long first, long last) {
       m_Sic = sic;
       // only index non-zero items
       int indexSize = 0;
-      int lowest = first;
-      int highest = last;
+      long lowest = first;
+      long highest = last;
       boolean ascending = true;
       if (last < first) {
          lowest = last;
@@ -122,16 +134,15 @@ public class SharedIndex {
          SharedIndexableInts s = sic.get(i);
          int size = s.getSize();
          for (int j = 0; j < size; ++j) {
-            int count = s.getCount(j);
+            long count = s.getCount(j);
             if (lowest <= count && count <= highest) {
                ++indexSize;
             }
          }
       }
       // only refer to non-zero items
-      m_Values = new int[indexSize];
+      m_Values = new long[indexSize];
       m_CounterIndex = new int[indexSize];
-      m_Index = new int[indexSize];
       m_Offset = new int[indexSize];
       m_Percent = null;
       int k = 0;
@@ -139,32 +150,22 @@ public class SharedIndex {
          SharedIndexableInts s = sic.get(i);
          int size = s.getSize();
          for (int j = 0; j < size; ++j) {
-            int count = s.getCount(j);
+            long count = s.getCount(j);
             if (lowest <= count && count <= highest) {
                m_Values[k] = count;
                m_CounterIndex[k] = i;
-               m_Index[k] = k;
                m_Offset[k] = j;
                ++k;
             }
          }
       }
-      // sort
-      for (int i = 0; i < m_Index.length; ++i) {
-         for (int j = i + 1; j < m_Index.length; ++j) {
-            if (( ascending && m_Values[m_Index[j]] < m_Values[m_Index[i]])
-             || (!ascending && m_Values[m_Index[j]] > m_Values[m_Index[i]])) {
-               int tmp = m_Index[i];
-               m_Index[i] = m_Index[j];
-               m_Index[j] = tmp;
-            }
-         }
-      }
+      // equal values stay in counter order
+      m_Index = IndexSort.sort(m_Values, ascending);
    }
    
    // Data ////////////////////////////////////////////////////////////////////
    private ArrayList<SharedIndexableInts> m_Sic;
-   private int[] m_Values;
+   private long[] m_Values;
    private int[] m_CounterIndex;
    private int[] m_Index;
    private int[] m_Offset;
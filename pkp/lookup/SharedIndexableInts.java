@@ -8,6 +8,6 @@ package pkp.lookup;
 ////////////////////////////////////////////////////////////////////////////////
 public interface SharedIndexableInts {
    int getSize();
-   int getCount(int i);
+   long getCount(int i);
    String getLabel(int i);
 }
\ No newline at end of file
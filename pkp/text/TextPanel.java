@@ -56,9 +56,8 @@ public class TextPanel
       m_PressedTimer.setActionCommand(null);
       m_PressedTimer.stop();
       m_KeyMap = km;
-      m_Text = "";
+      m_Text = new TextTokenizer();
       m_SPACE = (char)Pref.getInt("#.text.visible.space", 0x87);
-      m_Past = "";
       m_KplSource = null;
    }
 
@@ -120,40 +119,36 @@ public class TextPanel
    ////////////////////////////////////////////////////////////////////////////
    public Twiddle getFirstTwiddle() {
       Assignment asg = null;
+      m_Text.clearFuture();
       for (int i = 0; i < 1000 && asg == null; ++i) {
-         m_Text = getNextString();
-         asg = KeyPressList.parseTextAndTags(m_Text).findLongestPrefix(m_KeyMap);
+         String str = getNextString();
+         if (str == null) {
+            break;
+         }
+         m_Text.append(str);
+         asg = m_Text.find(m_KeyMap);
       }
       if (asg == null) {
          Log.warn("No key found that maps to a chord.");
          return null;
       }
-      highlight(asg.getKeyPressList().toString(Format.DISPLAY).length());
       repaint();
       return asg.getBestTwiddle();
    }
 
    ////////////////////////////////////////////////////////////////////////////
    public Twiddle getNextTwiddle(KeyPressList pressed) {
-      String str = pressed.toString(Format.DISPLAY);
-      if (!m_Text.startsWith(str)) {
+      if (!m_Text.accept(pressed.toString(Format.DISPLAY))) {
          return null;
       }
-		m_Past += str;
-      m_Text = m_Text.substring(str.length());
-      Assignment asg = null;
-      while (!"".equals(m_Text) 
-          && (asg = KeyPressList.parseTextAndTags(m_Text).findLongestPrefix(m_KeyMap)) == null) {
-         // skip unmapped characters
-         m_Past += m_Text.substring(0, 1);
-         m_Text = m_Text.substring(1);
-      }
-		if ("".equals(m_Text)) {
+      // skips unmapped characters
+      Assignment asg = m_Text.find(m_KeyMap);
+		if (asg == null) {
 	      //Lesson.progress();
 			return getFirstTwiddle();
 		}
 //System.out.printf("'%s' %d%n", asg.getKeyPressList().toString(Format.DISPLAY), asg.getKeyPressList().toString(Format.DISPLAY).length());
-      highlight(asg.getKeyPressList().toString(Format.DISPLAY).length());
+      repaint();
       return asg.getBestTwiddle();
    }
 
@@ -161,7 +156,6 @@ public class TextPanel
    public void next(boolean accepted) {
       if (m_KplSource != null) {
          m_KplSource.send(accepted ? this : null);
-//System.out.printf("m_Text.length() %d%n", m_Text.length());
       }
    }
 
@@ -182,7 +176,7 @@ public class TextPanel
    @Override
    public void paintComponent(Graphics g) {
       super.paintComponent(g);
-      if (m_Past.length() + m_Text.length() == 0 || !(g instanceof Graphics2D)) {
+      if (m_Text.isEmpty() || !(g instanceof Graphics2D)) {
          return;
       }
       int y = (int)(getHeight() * 0.75);
@@ -201,41 +195,39 @@ public class TextPanel
          return;
       }
       FontMetrics fm = g.getFontMetrics(getFont());
-      String hlight = m_Text.substring(0, m_Length).replace(' ', m_SPACE);
+      String hlight = m_Text.getHighlight().replace(' ', m_SPACE);
       int start = (getWidth() - fm.stringWidth(hlight.substring(0, 0))) / 3;
-      int startPast = start - fm.stringWidth(m_Past);
+      String past = m_Text.getPast();
+      int startPast = start - fm.stringWidth(past);
       if (startPast < 0) {
          int i = 0;
          while (startPast < 0) {
             ++i;
-            startPast = start - fm.stringWidth(m_Past.substring(i));
+            startPast = start - fm.stringWidth(past.substring(i));
          }
-         m_Past = m_Past.substring(i);
+         m_Text.trimPast(i);
+         past = past.substring(i);
       }
       int startFuture = start + fm.stringWidth(hlight);
+      String future = m_Text.getFuture();
       String extend;
-      while (startFuture + fm.stringWidth(m_Text.substring(Math.min(m_Length, m_Text.length()))) < getWidth()
-          && (!"".equals(extend = getNextString()))) {
-         m_Text += extend;
+      while (startFuture + fm.stringWidth(future) < getWidth()
+          && (extend = getNextString()) != null && !"".equals(extend)) {
+         m_Text.append(extend);
+         future += extend;
       }
       if (!m_HideText) {
          g.setColor(m_TEXT_COLOR);
-         g.drawString(m_Past, startPast, y);
+         g.drawString(past, startPast, y);
          g.setColor(m_TEXT_HIGHLIGHT_COLOR);
          g.drawString(hlight, start, y);
          g.setColor(m_TEXT_COLOR);
-         g.drawString(m_Text.substring(m_Length), startFuture, y);
+         g.drawString(future, startFuture, y);
       }
    }
 
    // Private /////////////////////////////////////////////////////////////////
 
-   ////////////////////////////////////////////////////////////////////////////
-   private void highlight(int length) {
-      m_Length = Math.min(length, m_Text.length());
-      repaint();
-   }
-
    ////////////////////////////////////////////////////////////////////////////
    // returns characters representing a random twiddle
    private String getNextString() {
@@ -289,10 +281,7 @@ public class TextPanel
    private KeyPressListSource m_KplSource;
    private Assignment m_Assignment;
    private boolean m_HideText;
-   private String m_Past;
-   private int m_Start;
-   private int m_Length;
-   private String m_Text;
+   private TextTokenizer m_Text;
    private boolean m_Hit;
    private Font m_PromptFont;
    private Font m_TextFont;
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ *  TextTokenizer.java
+ */
+
+package pkp.text;
+
+import java.util.Arrays;
+import pkp.twiddle.Assignment;
+import pkp.twiddle.KeyMap;
+import pkp.twiddle.KeyPressList;
+
+///////////////////////////////////////////////////////////////////////////////
+// The text to be chorded, the part already chorded and the keystrokes it
+// parses to. Text is parsed once as it is appended, and matched against the
+// keymap a keystroke at a time as the cursor reaches it, so the work per
+// chord does not depend on the length of the text.
+class TextTokenizer {
+
+   ////////////////////////////////////////////////////////////////////////////
+   TextTokenizer() {
+      m_Text = new StringBuilder();
+      m_Keys = new KeyPressList();
+      m_Ends = new int[sm_INITIAL_KEYS];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void append(String str) {
+      int[] ends = new int[str.length()];
+      KeyPressList kpl = KeyPressList.parseTextAndTags(str, ends, null);
+      int offset = m_Text.length();
+      m_Text.append(str);
+      if (m_Keys.size() + kpl.size() > m_Ends.length) {
+         m_Ends = Arrays.copyOf(m_Ends, Math.max(m_Ends.length * 2, m_Keys.size() + kpl.size()));
+      }
+      for (int i = 0; i < kpl.size(); ++i) {
+         m_Ends[m_Keys.size()] = offset + ends[i];
+         m_Keys.add(kpl.get(i));
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Drops the text after the cursor.
+   void clearFuture() {
+      m_Text.setLength(m_Start);
+      m_Keys = new KeyPressList();
+      m_Key = 0;
+      m_Length = 0;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Skips keys that are not mapped, and returns the assignment that maps
+   // the most keys from the cursor on, or null if the text runs out.
+   Assignment find(KeyMap km) {
+      for (; m_Key < m_Keys.size(); ++m_Key) {
+         Assignment asg = m_Keys.findLongestPrefix(km, m_Key);
+         if (asg != null) {
+            m_Length = m_Ends[m_Key + asg.getKeyPressList().size() - 1] - m_Start;
+            return asg;
+         }
+         // skip unmapped keys
+         m_Start = m_Ends[m_Key];
+      }
+      // and any text that is not a key
+      m_Start = m_Text.length();
+      m_Length = 0;
+      return null;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Moves the cursor past pressed if the text starts with it.
+   boolean accept(String pressed) {
+      int end = m_Start + pressed.length();
+      if (end > m_Text.length()) {
+         return false;
+      }
+      for (int i = 0; i < pressed.length(); ++i) {
+         if (m_Text.charAt(m_Start + i) != pressed.charAt(i)) {
+            return false;
+         }
+      }
+      while (m_Start < end && m_Key < m_Keys.size()) {
+         m_Start = m_Ends[m_Key++];
+      }
+      m_Start = Math.max(m_Start, end);
+      m_Length = 0;
+      compact();
+      return true;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Forgets the first chars of the past.
+   void trimPast(int chars) {
+      m_PastStart = Math.min(m_PastStart + chars, m_Start);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   boolean isEmpty() { return m_PastStart == m_Text.length(); }
+   boolean isFutureEmpty() { return m_Start == m_Text.length(); }
+   String getPast() { return m_Text.substring(m_PastStart, m_Start); }
+   String getHighlight() { return m_Text.substring(m_Start, m_Start + m_Length); }
+   String getFuture() { return m_Text.substring(m_Start + m_Length); }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Drops passed keys and forgotten text once they are most of what is
+   // kept, so each is copied a bounded number of times.
+   private void compact() {
+      if (m_Key > 0 && m_Key * 2 >= m_Keys.size()) {
+         m_Keys = m_Keys.sublist(m_Key);
+         System.arraycopy(m_Ends, m_Key, m_Ends, 0, m_Keys.size());
+         m_Key = 0;
+      }
+      if (m_PastStart > 0 && m_PastStart * 2 >= m_Text.length()) {
+         m_Text.delete(0, m_PastStart);
+         for (int i = 0; i < m_Keys.size(); ++i) {
+            m_Ends[i] -= m_PastStart;
+         }
+         m_Start -= m_PastStart;
+         m_PastStart = 0;
+      }
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_INITIAL_KEYS = 256;
+   // m_PastStart <= m_Start <= m_Start + m_Length <= m_Text.length()
+   private StringBuilder m_Text;
+   private int m_PastStart;
+   private int m_Start;
+   private int m_Length;
+   private KeyPressList m_Keys;
+   // key to offset in m_Text after it
+   private int[] m_Ends;
+   // first key from m_Start on
+   private int m_Key;
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * ChordHistogram.java
+ */
+
+package pkp.times;
+
+import java.nio.ByteBuffer;
+
+///////////////////////////////////////////////////////////////////////////////
+// Counts of times in log sized buckets: times below sm_SUB_BUCKETS msec have
+// a bucket each, and each doubling above that is split into sm_SUB_BUCKETS
+// buckets, so any time is held to within 1/sm_SUB_BUCKETS of its value and
+// the size does not depend on how many times are counted.
+class ChordHistogram {
+
+   ////////////////////////////////////////////////////////////////////////////
+   ChordHistogram() {
+      m_Counts = new int[sm_BUCKETS];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   ChordHistogram(ChordHistogram other) {
+      m_Counts = other.m_Counts.clone();
+      m_Total = other.m_Total;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   long getTotal() {
+      return m_Total;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void add(int timeMs) {
+      int b = toBucket(timeMs);
+      if (m_Counts[b] < Integer.MAX_VALUE) {
+         ++m_Counts[b];
+         ++m_Total;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void add(ChordHistogram other) {
+      for (int b = 0; b < sm_BUCKETS; ++b) {
+         long sum = (long)m_Counts[b] + other.m_Counts[b];
+         int count = (int)Math.min(sum, Integer.MAX_VALUE);
+         m_Total += count - m_Counts[b];
+         m_Counts[b] = count;
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The time that percent of the times are no greater than, or 0 if there
+   // are none.
+   int getPercentile(double percent) {
+      if (m_Total == 0) {
+         return 0;
+      }
+      long rank = Math.max(1, (long)Math.ceil(m_Total * Math.min(percent, 100.0) / 100.0));
+      long seen = 0;
+      for (int b = 0; b < sm_BUCKETS; ++b) {
+         seen += m_Counts[b];
+         if (seen >= rank) {
+            return toTime(b);
+         }
+      }
+      return toTime(sm_BUCKETS - 1);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The non-zero buckets as a count, then bucket, count pairs.
+   void write(ByteBuffer bb) {
+      int used = 0;
+      for (int b = 0; b < sm_BUCKETS; ++b) {
+         if (m_Counts[b] != 0) {
+            ++used;
+         }
+      }
+      bb.putShort((short)used);
+      for (int b = 0; b < sm_BUCKETS; ++b) {
+         if (m_Counts[b] != 0) {
+            bb.putShort((short)b);
+            bb.putInt(m_Counts[b]);
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   static int writeSize(ChordHistogram h) {
+      int size = 2;
+      if (h != null) {
+         for (int b = 0; b < sm_BUCKETS; ++b) {
+            if (h.m_Counts[b] != 0) {
+               size += 6;
+            }
+         }
+      }
+      return size;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Returns null if there were no times.
+   static ChordHistogram read(ByteBuffer bb) {
+      int used = bb.getShort();
+      if (used == 0) {
+         return null;
+      }
+      ChordHistogram h = new ChordHistogram();
+      for (int i = 0; i < used; ++i) {
+         int b = bb.getShort();
+         int count = bb.getInt();
+         if (b >= 0 && b < sm_BUCKETS && count > 0) {
+            h.m_Counts[b] = count;
+            h.m_Total += count;
+         }
+      }
+      return h;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static int toBucket(int timeMs) {
+      int t = Math.max(0, Math.min(timeMs, sm_MAX_MSEC));
+      if (t < sm_SUB_BUCKETS) {
+         return t;
+      }
+      // the top bit and the sm_SUB_BITS after it
+      int shift = 31 - Integer.numberOfLeadingZeros(t) - sm_SUB_BITS;
+      return (shift + 1) * sm_SUB_BUCKETS + (t >> shift) - sm_SUB_BUCKETS;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The middle of the bucket.
+   private static int toTime(int bucket) {
+      if (bucket < sm_SUB_BUCKETS) {
+         return bucket;
+      }
+      int shift = bucket / sm_SUB_BUCKETS - 1;
+      int low = (bucket % sm_SUB_BUCKETS + sm_SUB_BUCKETS) << shift;
+      return low + (1 << shift) / 2;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_SUB_BITS = 5;
+   private static final int sm_SUB_BUCKETS = 1 << sm_SUB_BITS;
+   private static final int sm_MAX_MSEC = Short.MAX_VALUE;
+   private static final int sm_BUCKETS = toBucket(sm_MAX_MSEC) + 1;
+   private final int[] m_Counts;
+   private long m_Total;
+}
@@ -8,12 +8,14 @@ package pkp.times;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import pkp.twiddle.Chord;
 import pkp.util.AxisLabels;
+import pkp.util.IndexSort;
 import pkp.util.Persistent;
 import pkp.util.Persist;
 import pkp.util.Pref;
@@ -22,6 +24,14 @@ import pkp.io.Io;
 
 ////////////////////////////////////////////////////////////////////////////////
 // Chord 0 is not counted so we subtract 1 and use Chord.sm_VALUES counts.
+// Times are appended to a journal as they are added, so a crash loses none
+// of them. The journal is compacted into the snapshot file when the times
+// are persisted, and when one left by a crash is loaded, never while
+// typing.
+// In history mode every time is also counted in a histogram per chord that
+// follows the rings in the snapshot, for percentiles over all the practice.
+// The times from one chord to the next are kept apart in a transitions file
+// written with the snapshot.
 public class ChordTimes implements Persistent {
    
    /////////////////////////////////////////////////////////////////////////////
@@ -31,7 +41,7 @@ public class ChordTimes implements Persistent {
 
    /////////////////////////////////////////////////////////////////////////////
    public ChordTimes(boolean isKeys, boolean isRightHand) {
-      this(isKeys, isRightHand, Pref.getInt("#.chord.times.stored", 16));
+      this(isKeys, isRightHand, Pref.getInt("#.chord.times.stored", 16), Pref.getBool("#.chord.times.history", false));
 //System.out.println(getExtension());
    }
 
@@ -70,9 +80,12 @@ public class ChordTimes implements Persistent {
 
    /////////////////////////////////////////////////////////////////////////////
    public void clear() {
-      File f = Io.createFile(Persist.getFolderName(), getFileName());
-      if (f.exists() && !f.isDirectory()) {
-         f.delete();
+      m_Journal.delete();
+      for (String name : new String[]{getFileName(), getTransitionsFileName()}) {
+         File f = Io.createFile(Persist.getFolderName(), name);
+         if (f.exists() && !f.isDirectory()) {
+            f.delete();
+         }
       }
       load();
    }
@@ -89,24 +102,83 @@ public class ChordTimes implements Persistent {
    /////////////////////////////////////////////////////////////////////////////
    public boolean add(int chord, int thumbKeys, int timeMs) {
 //System.out.printf("add(chord %d thumbKeys %d time %d)%n", chord, thumbKeys, timeMs);
-      if (timeMs == 0) {
-         Log.warn("Adding zero chord time");
-         timeMs = 1;
-      }
-      if (timeMs > Short.MAX_VALUE) {
+      // as replaying the journal does
+      if (timeMs <= 0 || timeMs > Short.MAX_VALUE) {
          return false;
       }
-      int thumb = Math.min(thumbKeys, 1);
-      ++m_TotalSamples[thumb];
-      addMean(false, chord, thumb);
-      m_DataStatus = DataStatus.NEW;
       if ((chord & ~Chord.sm_VALUES) != 0) {
          Log.err(String.format("Chord value %d is not in the range [1..%d]\n", chord, Chord.sm_VALUES));
          chord &= Chord.sm_VALUES;
       }
+      int thumb = Math.min(thumbKeys, 1);
+      record(chord, thumb, timeMs);
+      m_Journal.append(chord, thumb, timeMs);
+      return true;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // Adds the time of chord as it followed prevChord, which is 0 if it
+   // followed none. Transitions are not journalled, only persisted.
+   public boolean add(int prevChord, int chord, int thumbKeys, int timeMs) {
+      if (timeMs <= 0 || timeMs > Short.MAX_VALUE) {
+         return false;
+      }
+      if (prevChord >= 1 && prevChord <= Chord.sm_VALUES
+       && chord >= 1 && chord <= Chord.sm_VALUES) {
+         m_Transitions.add(prevChord, chord, Math.min(thumbKeys, 1), timeMs);
+      }
+      return add(chord, thumbKeys, timeMs);
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // Up to max transitions, slowest first, with how much slower each is than
+   // the chord on its own.
+   public String listSlowestTransitions(int max) {
+      int[] slots = m_Transitions.getSlots();
+      long[] means = new long[slots.length];
+      for (int i = 0; i < slots.length; ++i) {
+         means[i] = m_Transitions.getMean(slots[i]);
+      }
+      String str = String.format("# %d transitions%n", slots.length)
+                 + "# msec count  +msec from to\n";
+      int[] index = IndexSort.sort(means, false);
+      for (int i = 0; i < Math.min(max, index.length); ++i) {
+         int s = slots[index[i]];
+         int chord = m_Transitions.getChord(s);
+         int thumb = m_Transitions.getThumb(s);
+         str += String.format("%6d %5d %+6d %s %s%s%n",
+                              means[index[i]],
+                              m_Transitions.getSlotCount(s),
+                              means[index[i]] - getMean(chord, thumb),
+                              Chord.fromChordValue(m_Transitions.getPrev(s)),
+                              Chord.fromChordValue(chord),
+                              thumb == 0 ? "" : " thumb");
+      }
+      return str;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // Adds a valid time without journalling it.
+   private void record(int chord, int thumb, int timeMs) {
+      if (m_HISTORY) {
+         if (m_History[thumb][chord - 1] == null) {
+            m_History[thumb][chord - 1] = new ChordHistogram();
+         }
+         m_History[thumb][chord - 1].add(timeMs);
+      }
+      ++m_TotalSamples[thumb];
+      addMean(false, chord, thumb);
+      m_DataStatus = DataStatus.NEW;
       byte count = m_Counts[thumb][chord - 1];
       int i = count & (m_SPAN - 1);
 //System.out.printf("timeMs %d m_Counts %d mean %d%n", timeMs, m_Counts[thumb][chord - 1], getMean(chord, thumb));
+      short[] sorted = m_Sorted[thumb][chord - 1];
+      int sortedCount = getCount(chord, thumb);
+      if (sortedCount == m_SPAN) {
+         // the oldest is overwritten
+         sortedCount = remove(sorted, 0, sortedCount, m_Times[thumb][chord - 1][i]);
+      }
+      insert(sorted, 0, sortedCount, (short)timeMs);
       m_Times[thumb][chord - 1][i] = (short)timeMs;
       ++i;
       int full = count & m_SPAN;
@@ -117,39 +189,86 @@ public class ChordTimes implements Persistent {
       m_Counts[thumb][chord - 1] = (byte)(full | i);
       addMean(true, chord, thumb);
 //System.out.println(list(m_Times[thumb][chord - 1]));
-      return true;
    }
 
    /////////////////////////////////////////////////////////////////////////////
+   // The mean of the interquartile times.
    public int getMean(int chord, int thumbKeys) {
-      short[] sort = getIq(chord, thumbKeys);
-      if (sort == null) {
+      int thumb = Math.min(thumbKeys, 1);
+      int count = getCount(chord, thumb);
+      if (count == 0) {
          return 0;
       }
+      int trim = getTrim(count);
+      short[] sorted = m_Sorted[thumb][chord - 1];
       int sum = 0;
-      int i = 0;
-      for (; sort[i] != -1; ++i) {
-         sum += sort[i];
+      for (int i = trim; i < count - trim; ++i) {
+         sum += sorted[i];
       }
-      return sum / i;
+      return sum / (count - 2 * trim);
    }
 
    /////////////////////////////////////////////////////////////////////////////
-   int getRange(int chord, int thumbKeys) {
-      short[] sort = getIq(chord, thumbKeys);
-      if (sort == null) {
-         return 0;
+   // The percentiles of the count chords with the highest 90th percentile.
+   private String getSlowest(int count) {
+      int[] chords = new int[Chord.sm_VALUES];
+      long[] p90s = new long[Chord.sm_VALUES];
+      int n = 0;
+      for (int c = 1; c <= Chord.sm_VALUES; ++c) {
+         ChordHistogram h = getHistogram(c, 0);
+         if (h != null && h.getTotal() > 0) {
+            chords[n] = c;
+            p90s[n] = h.getPercentile(90);
+            ++n;
+         }
       }
-      int i = Math.min(m_SPAN - 3, sort.length - 1);
-      while (sort[i] != -1) {
-         --i;
+      int[] index = IndexSort.sort(Arrays.copyOf(p90s, n), false);
+      String str = "";
+      for (int i = 0; i < Math.min(n, count); ++i) {
+         int c = chords[index[i]];
+         ChordHistogram h = getHistogram(c, 0);
+         str += String.format("%5s %5d %5d %5d %7d%n",
+                              Chord.fromChordValue(c),
+                              h.getPercentile(50), h.getPercentile(90), h.getPercentile(99),
+                              h.getTotal());
       }
-      if (i == 1) {
+      return str;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // The times of all the chords, or null if there is no history.
+   ChordHistogram getHistogram(int thumbKeys) {
+      if (m_History == null) {
+         return null;
+      }
+      ChordHistogram all = new ChordHistogram();
+      for (ChordHistogram h : m_History[Math.min(thumbKeys, 1)]) {
+         if (h != null) {
+            all.add(h);
+         }
+      }
+      return all;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   ChordHistogram getHistogram(int chord, int thumbKeys) {
+      return m_History == null
+             ? null
+             : m_History[Math.min(thumbKeys, 1)][chord - 1];
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // The range of the interquartile times.
+   int getRange(int chord, int thumbKeys) {
+      int thumb = Math.min(thumbKeys, 1);
+      int count = getCount(chord, thumb);
+      if (count == 0) {
          return 0;
       }
-      getMinMax(sort, i);
-//System.out.printf("getRange() max %d min %d%n", sort[i - 1], sort[i - 2]);
-      return sort[i - 1] - sort[i - 2];
+      int trim = getTrim(count);
+      short[] sorted = m_Sorted[thumb][chord - 1];
+//System.out.printf("getRange() max %d min %d%n", sorted[count - trim - 1], sorted[trim]);
+      return sorted[count - trim - 1] - sorted[trim];
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -292,9 +411,19 @@ public class ChordTimes implements Persistent {
          }
       }
 
+      String history = "";
+      ChordHistogram all = getHistogram(0);
+      if (all != null && all.getTotal() > 0) {
+         history = String.format("All samples: %d%n", all.getTotal())
+                 + String.format("Percentiles (msec): 50%% %d 90%% %d 99%% %d%n",
+                                 all.getPercentile(50), all.getPercentile(90), all.getPercentile(99))
+                 + "\nSlowest chords by 90% (msec)\nChord   50%   90%   99% Samples\n"
+                 + getSlowest(sm_SLOWEST);
+      }
       return '\n' 
            + String.format("Samples: %d%n", getTotalSamples(0))
            + String.format("Mean (msec): %d%n", sum / Chord.sm_VALUES)
+           + history
            + "\nFingers in chord:   1     2     3     4"
            + "\nPossible chords:" + nCountStr
            + "\nMean (msec):    " + nMeanStr
@@ -322,14 +451,24 @@ public class ChordTimes implements Persistent {
    }
 
    ////////////////////////////////////////////////////////////////////////////
+   // Compacts the journal into the snapshot. The snapshot is written to a
+   // temporary file that replaces it only once complete.
    @Override
    public void persist(String tag) {
 //System.out.println("persist " + getFileName());
       if (m_DataStatus != DataStatus.NEW) {
          return;
       }
-      m_DataStatus = DataStatus.SAVED;
-      byte[] data = new byte[sm_CHORD_TYPES * Chord.sm_VALUES * (1 + m_SPAN * 2)];
+      int size = sm_CHORD_TYPES * Chord.sm_VALUES * (1 + m_SPAN * 2);
+      if (m_History != null) {
+         size += 4;
+         for (int thumb = 0; thumb < sm_CHORD_TYPES; ++thumb) {
+            for (int c = 0; c < Chord.sm_VALUES; ++c) {
+               size += ChordHistogram.writeSize(m_History[thumb][c]);
+            }
+         }
+      }
+      byte[] data = new byte[size];
       ByteBuffer bb = ByteBuffer.wrap(data);
       for (int thumb = 0; thumb < sm_CHORD_TYPES; ++thumb) {
          for (int c = 0; c < Chord.sm_VALUES; ++c) {
@@ -348,22 +487,34 @@ public class ChordTimes implements Persistent {
             }
          }
       }
-      File f = Io.createFile(Persist.getFolderName(), getFileName());
-      FileOutputStream fos = null;
-      try {
-         fos = new FileOutputStream(f);
-      } catch (FileNotFoundException e) {
-         Log.warn("Failed to open: \"" + f.getPath() + "\".");
-         return;
+      if (m_History != null) {
+         bb.putInt(sm_HISTORY_MARK);
+         for (int thumb = 0; thumb < sm_CHORD_TYPES; ++thumb) {
+            for (int c = 0; c < Chord.sm_VALUES; ++c) {
+               if (m_History[thumb][c] == null) {
+                  bb.putShort((short)0);
+               } else {
+                  m_History[thumb][c].write(bb);
+               }
+            }
+         }
       }
-      try {
-         // use bb.size()
-         fos.write(data, 0, data.length);
-         fos.flush();
-         fos.close();
-      } catch (IOException e) {
-         Log.warn("Failed to write: \"" + f.getPath() + "\".");
+      if (!writeFile(getFileName(), data, bb.position())) {
+         return;
       }
+      byte[] transitions = new byte[m_Transitions.writeSize()];
+      m_Transitions.write(ByteBuffer.wrap(transitions));
+      writeFile(getTransitionsFileName(), transitions, transitions.length);
+      // a journal left by a crash here no longer matches the snapshot
+      m_Journal.restart(TimesJournal.checksum(data, bb.position()));
+      m_DataStatus = DataStatus.SAVED;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // Writes the first length of data to a temporary file that then replaces
+   // name, so name is whole or as it was.
+   private boolean writeFile(String name, byte[] data, int length) {
+      return Io.replace(Io.createFile(Persist.getFolderName(), name), data, length);
    }
 
    /////////////////////////////////////////////////////////////////////////////
@@ -599,11 +750,12 @@ public class ChordTimes implements Persistent {
    }
 
    /////////////////////////////////////////////////////////////////////////////
-   private ChordTimes(boolean isKeys, boolean isRightHand, int span) {
+   private ChordTimes(boolean isKeys, boolean isRightHand, int span, boolean history) {
       m_SPAN = span;
       legalSpan(m_SPAN);
       m_KEYS = isKeys;
       m_RIGHTHAND = isRightHand;
+      m_HISTORY = history;
       load();
    }
 
@@ -626,54 +778,50 @@ public class ChordTimes implements Persistent {
    }
 
    /////////////////////////////////////////////////////////////////////////////
-   // returns the InterQuartile values terminated by -1
-   private short[] getIq(int chord, int thumbKeys) {
-      int thumb = Math.min(thumbKeys, 1);
-      int end = getCount(chord, thumb);
-      if (end == 0) {
-         // no time
-         return null;
-      }
-      short[] sort = java.util.Arrays.copyOf(m_Times[thumb][chord - 1], end + 1);
-      if (end > 2) {
-         int iq = end / 2;
-         for (; end > iq; end -= 2) {
-            getMinMax(sort, end);
-         }
+   // The number of times trimmed from each end of count sorted times to leave
+   // the interquartile ones: pairs of min and max are dropped until no more
+   // than half are left.
+   static int getTrim(int count) {
+      if (count <= 2) {
+         return 0;
       }
-      sort[end] = -1;
-//System.out.println("getIq() " + list(sort));
-      return sort;
+      return (count - count / 2 + 1) / 2;
    }
 
    /////////////////////////////////////////////////////////////////////////////
-   // move min and max to end
-   private void getMinMax(short[] data, int count) {
-      int min = count - 2;
-      int max = count - 1;
-      if (data[max] < data[min]) {
-         short swap = data[max];
-         data[max] = data[min];
-         data[min] = swap;
+   // Inserts time in the count sorted from start, returns the new count.
+   static int insert(short[] sorted, int start, int count, short time) {
+      int i = Arrays.binarySearch(sorted, start, start + count, time);
+      if (i < 0) {
+         i = -i - 1;
       }
-      for (int i = 0; i < min; ++i) {
-         if (data[max] < data[i]) {
-            short swap = data[max];
-            data[max] = data[i];
-            data[i] = swap;
-         }
-         if (data[min] > data[i]) {
-            short swap = data[min];
-            data[min] = data[i];
-            data[i] = swap;
-         }
+      System.arraycopy(sorted, i, sorted, i + 1, start + count - i);
+      sorted[i] = time;
+      return count + 1;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // Removes time from the count sorted from start, returns the new count.
+   static int remove(short[] sorted, int start, int count, short time) {
+      int i = Arrays.binarySearch(sorted, start, start + count, time);
+      if (i < 0) {
+         Log.err(String.format("Chord time %d is not in the sorted times", time));
+         return count;
       }
+      System.arraycopy(sorted, i + 1, sorted, i, start + count - i - 1);
+      return count - 1;
    }
 
    /////////////////////////////////////////////////////////////////////////////
    private void load() {
       // up to m_SPAN times for each
       m_Times = new short[sm_CHORD_TYPES][Chord.sm_VALUES][m_SPAN];
+      // the same times in order
+      m_Sorted = new short[sm_CHORD_TYPES][Chord.sm_VALUES][m_SPAN];
+      // histograms of all the times, read even if not added to
+      m_History = m_HISTORY
+                  ? new ChordHistogram[sm_CHORD_TYPES][Chord.sm_VALUES]
+                  : null;
       // the actual number of times held
       m_Counts = new byte[sm_CHORD_TYPES][Chord.sm_VALUES];
       m_MeanSum = new int[sm_CHORD_TYPES];
@@ -685,20 +833,51 @@ public class ChordTimes implements Persistent {
       m_TotalSamples = new int[sm_CHORD_TYPES];
       m_TotalSamples[0] = 0;
       m_TotalSamples[1] = 0;
-      File f = Io.createFile(Persist.getFolderName(), getFileName());
+      m_DataStatus = DataStatus.NONE;
+      byte[] data = readFile(getFileName());
+      if (data.length > 0) {
+         m_DataStatus = DataStatus.SAVED;
+         readSnapshot(data);
+      }
+      m_Transitions = new TransitionTimes(m_SPAN);
+      byte[] transitions = readFile(getTransitionsFileName());
+      if (transitions.length > 0
+       && !m_Transitions.read(ByteBuffer.wrap(transitions))) {
+         Log.log("Ignored truncated chord transition times");
+      }
+      if (m_Journal == null) {
+         m_Journal = new TimesJournal(Io.createFile(Persist.getFolderName(), getFileName() + ".journal"));
+      }
+      ByteBuffer records = m_Journal.read(TimesJournal.checksum(data, data.length));
+      if (records != null && records.hasRemaining()) {
+         while (records.hasRemaining()) {
+            int chord = records.get() & 0xFF;
+            int thumb = records.get();
+            int timeMs = records.getShort();
+            if (chord >= 1 && (thumb == 0 || thumb == 1) && timeMs > 0) {
+               record(chord, thumb, timeMs);
+            }
+         }
+         m_DataStatus = DataStatus.NEW;
+         // left by a crash, so compact it now rather than while typing
+         persist("");
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private byte[] readFile(String name) {
+      File f = Io.createFile(Persist.getFolderName(), name);
       if (!f.exists() || f.isDirectory()) {
-         m_DataStatus = DataStatus.NONE;
-         return;
+         return new byte[0];
       }
 //System.out.println("load " + f.getPath());
-      m_DataStatus = DataStatus.SAVED;
       byte[] data = new byte[(int)f.length()];
       FileInputStream fis = null;
       try {
          fis = new FileInputStream(f);
       } catch (FileNotFoundException e) {
          Log.log("No existing times");
-         return;
+         return new byte[0];
       }
       try {
          fis.read(data, 0, data.length);
@@ -706,6 +885,11 @@ public class ChordTimes implements Persistent {
       } catch (IOException e) {
          Log.err("Failed to read times: " + e);
       }
+      return data;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private void readSnapshot(byte[] data) {
       ByteBuffer bb = ByteBuffer.wrap(data);
       for (int thumb = 0; thumb < sm_CHORD_TYPES; ++thumb) {
          for (int c = 0; c < Chord.sm_VALUES; ++c) {
@@ -725,17 +909,40 @@ public class ChordTimes implements Persistent {
                for (int i = 0; i < end; ++i) {
                   times[i] = bb.getShort();
                }
+               System.arraycopy(times, 0, m_Sorted[thumb][c], 0, end);
+               Arrays.sort(m_Sorted[thumb][c], 0, end);
                // add new mean
                addMean(true, c + 1, thumb);
             }
          }
       }
+      // older snapshots have no histograms, just zeros
+      if (bb.remaining() < 4 || bb.getInt() != sm_HISTORY_MARK) {
+         return;
+      }
+      ChordHistogram[][] history = new ChordHistogram[sm_CHORD_TYPES][Chord.sm_VALUES];
+      try {
+         for (int thumb = 0; thumb < sm_CHORD_TYPES; ++thumb) {
+            for (int c = 0; c < Chord.sm_VALUES; ++c) {
+               history[thumb][c] = ChordHistogram.read(bb);
+            }
+         }
+      } catch (BufferUnderflowException e) {
+         Log.log("Ignored truncated chord time history");
+         return;
+      }
+      m_History = history;
    }
 
    /////////////////////////////////////////////////////////////////////////////
    private String getFileName() {
       return (m_KEYS ? "key" : "chord") + '.' + (m_RIGHTHAND ? "right" : "left") + ".times";
    }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private String getTransitionsFileName() {
+      return getFileName() + ".transitions";
+   }
       
    // Data /////////////////////////////////////////////////////////////////////
 
@@ -743,17 +950,27 @@ public class ChordTimes implements Persistent {
    enum DataStatus {
       NONE, SAVED, NEW;
    }
+
+   // "hist", the histograms follow
+   private static final int sm_HISTORY_MARK = 0x68697374;
+   // chords listed by percentile
+   private static final int sm_SLOWEST = 10;
    
    // number off attempts we keep track of
    private final int m_SPAN;
    private final boolean m_KEYS;
    private final boolean m_RIGHTHAND;
+   private final boolean m_HISTORY;
    private DataStatus m_DataStatus;
    private short[][][] m_Times;
+   private short[][][] m_Sorted;
+   private ChordHistogram[][] m_History;
    private byte[][] m_Counts;
    private int[] m_MeanSum;
    private int[] m_MeanCount;
    private int[] m_TotalSamples;
+   private TimesJournal m_Journal;
+   private TransitionTimes m_Transitions;
 
    // Main /////////////////////////////////////////////////////////////////////
    public static void main(String[] args) {
@@ -762,7 +979,7 @@ public class ChordTimes implements Persistent {
       Persist.init("twidlit.properties", ".", "pref");
       Pref.init("twidlit.preferences", Persist.get("#.pref.dir"), "pref");
       int count = Integer.parseInt(args[2]);
-      ChordTimes times = new ChordTimes(true, true, Integer.parseInt(args[0]));
+      ChordTimes times = new ChordTimes(true, true, Integer.parseInt(args[0]), false);
       for (int i = 0; i < count; ++i) {
          times.add(1, 0, i + 1);
          times.add(2, 0, i + 3);
@@ -776,7 +993,7 @@ public class ChordTimes implements Persistent {
       int size = Integer.parseInt(args[1]);
       if (size > 0) {
          times.persist("");
-         times = new ChordTimes(true, true, size);
+         times = new ChordTimes(true, true, size, false);
          limit = Math.min(count, times.getSpan());
          for (int i = 0; i < limit; ++i) {
             System.out.printf("ChordTimes %d %d%n", times.m_Times[0][0][i], times.m_Times[1][Chord.sm_VALUES - 1][i]);
@@ -11,6 +11,7 @@ import pkp.lookup.SharedIndexableInts;
 import pkp.lookup.SharedIndex;
 import pkp.io.LineReader;
 import pkp.io.Io;
+import pkp.util.IndexSort;
 import pkp.util.Log;
 import pkp.util.Util;
 
@@ -49,19 +50,11 @@ public class SortedChordTimes implements SharedIndexableInts {
          }
       }
       chordLr.close();
-      // sort them
-      for (int i = 0; i < m_Times.length; ++i) {
-         for (int k = i + 1; k < m_Times.length; ++k) {
-            if (m_Times[k] < m_Times[i]) {
-               int t = m_Times[i];
-               m_Times[i] = m_Times[k];
-               m_Times[k] = t;
-               String s = m_Labels[i];
-               m_Labels[i] = m_Labels[k];
-               m_Labels[k] = s;
-            }
-         }
-      }
+      // sort them, keeping the file order of equal times
+      int[] index = IndexSort.sort(m_Times, true);
+      m_Times = IndexSort.permute(m_Times, index);
+      m_Labels = IndexSort.permute(m_Labels, index);
+      m_Index = SharedIndex.create(this, 0, Integer.MAX_VALUE);
    }
 
    /////////////////////////////////////////////////////////////////////////////
@@ -173,7 +166,7 @@ public class SortedChordTimes implements SharedIndexableInts {
 
    ////////////////////////////////////////////////////////////////////////////
    @Override // SharedIndexableInts
-   public int getCount(int i) {
+   public long getCount(int i) {
       return m_Times[i];
    }
 
@@ -205,7 +198,8 @@ public class SortedChordTimes implements SharedIndexableInts {
    
    ///////////////////////////////////////////////////////////////////////////////
    public int getSortedValue(int i) {
-      return m_Index.getValue(i);
+      // times are ints
+      return (int)m_Index.getValue(i);
    }
    
    // Private //////////////////////////////////////////////////////////////////
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * TimesJournal.java
+ */
+
+package pkp.times;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import pkp.util.Log;
+
+///////////////////////////////////////////////////////////////////////////////
+// The chord times added since the snapshot was written, one fixed size
+// record each, appended as they arrive. The journal starts with the
+// checksum of the snapshot it follows, so a journal that is left behind
+// after its times were compacted into a newer snapshot is not replayed.
+class TimesJournal {
+
+   ////////////////////////////////////////////////////////////////////////////
+   static final int sm_RECORD_SIZE = 4;
+
+   ////////////////////////////////////////////////////////////////////////////
+   static int checksum(byte[] snapshot, int length) {
+      CRC32 crc = new CRC32();
+      crc.update(snapshot, 0, length);
+      return (int)crc.getValue();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   TimesJournal(File f) {
+      m_File = f;
+      m_Record = new byte[sm_RECORD_SIZE];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Returns the records that follow the snapshot with checksum crc, without
+   // any torn last record, or null if there are none. Later appends go after
+   // them.
+   ByteBuffer read(int crc) {
+      close();
+      m_Checksum = crc;
+      m_Length = 0;
+      m_Records = 0;
+      if (!m_File.exists() || m_File.isDirectory()) {
+         return null;
+      }
+      byte[] data = new byte[(int)m_File.length()];
+      try {
+         FileInputStream fis = new FileInputStream(m_File);
+         int read = 0;
+         for (int n = 0; read < data.length && n >= 0; read += n) {
+            n = fis.read(data, read, data.length - read);
+         }
+         fis.close();
+         data = read < data.length ? Arrays.copyOf(data, read) : data;
+      } catch (IOException e) {
+         Log.log("Failed to read \"" + m_File.getPath() + "\": " + e);
+         return null;
+      }
+      if (data.length < sm_HEADER_SIZE
+       || ByteBuffer.wrap(data).getInt() != crc) {
+         // stale or empty
+         return null;
+      }
+      m_Records = (data.length - sm_HEADER_SIZE) / sm_RECORD_SIZE;
+      m_Length = sm_HEADER_SIZE + m_Records * sm_RECORD_SIZE;
+      ByteBuffer bb = ByteBuffer.wrap(data, sm_HEADER_SIZE, m_Records * sm_RECORD_SIZE);
+      return bb.slice();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int getRecordCount() {
+      return m_Records;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Appends a record, opening the journal on the first.
+   boolean append(int chord, int thumb, int timeMs) {
+      if (m_Out == null && !open()) {
+         return false;
+      }
+      m_Record[0] = (byte)chord;
+      m_Record[1] = (byte)thumb;
+      m_Record[2] = (byte)(timeMs >> 8);
+      m_Record[3] = (byte)timeMs;
+      try {
+         m_Out.write(m_Record);
+      } catch (IOException e) {
+         Log.log("Failed to write \"" + m_File.getPath() + "\": " + e);
+         // reopening drops any partial record
+         close();
+         return false;
+      }
+      m_Length += sm_RECORD_SIZE;
+      ++m_Records;
+      return true;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // A new snapshot with checksum crc holds all the records so far.
+   void restart(int crc) {
+      delete();
+      m_Checksum = crc;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void delete() {
+      close();
+      if (m_File.exists() && !m_File.isDirectory()) {
+         m_File.delete();
+      }
+      m_Length = 0;
+      m_Records = 0;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void close() {
+      if (m_Out == null) {
+         return;
+      }
+      try {
+         m_Out.close();
+      } catch (IOException e) {
+         Log.log("Failed to close \"" + m_File.getPath() + "\": " + e);
+      }
+      m_Out = null;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Appends to the valid records read, or starts a new journal.
+   private boolean open() {
+      try {
+         if (m_Length == 0) {
+            m_Out = new FileOutputStream(m_File);
+            m_Out.write(ByteBuffer.allocate(sm_HEADER_SIZE).putInt(m_Checksum).array());
+            m_Length = sm_HEADER_SIZE;
+         } else {
+            m_Out = new FileOutputStream(m_File, true);
+            // drop any torn record
+            m_Out.getChannel().truncate(m_Length);
+         }
+      } catch (IOException e) {
+         Log.log("Failed to open \"" + m_File.getPath() + "\": " + e);
+         close();
+         return false;
+      }
+      return true;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_HEADER_SIZE = 4;
+   private final File m_File;
+   private final byte[] m_Record;
+   private FileOutputStream m_Out;
+   // checksum of the snapshot the records follow
+   private int m_Checksum;
+   // bytes of valid header and records in the file
+   private long m_Length;
+   private int m_Records;
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * TransitionTimes.java
+ */
+
+package pkp.times;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import pkp.twiddle.Chord;
+
+///////////////////////////////////////////////////////////////////////////////
+// The latest times from one chord to the next, kept like ChordTimes keeps
+// chord times but only for the pairs that have been typed. Pairs are keys
+// in an open addressing table and their times are slices of flat arrays,
+// so an entry costs a few bytes per time rather than an object per pair.
+class TransitionTimes {
+
+   ////////////////////////////////////////////////////////////////////////////
+   TransitionTimes(int span) {
+      m_SPAN = span;
+      allocate(sm_INITIAL_SLOTS);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int size() {
+      return m_Size;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   void add(int prev, int chord, int thumb, int timeMs) {
+      int s = find(toKey(prev, chord, thumb));
+      if (m_Keys[s] == 0) {
+         if ((m_Size + 1) * 2 > m_Keys.length) {
+            grow();
+            s = find(toKey(prev, chord, thumb));
+         }
+         m_Keys[s] = toKey(prev, chord, thumb);
+         ++m_Size;
+      }
+      int at = s * m_SPAN;
+      int held = m_Held[s];
+      if (held == m_SPAN) {
+         // the oldest is overwritten
+         held = ChordTimes.remove(m_Sorted, at, held, m_Times[at + m_Next[s]]);
+      }
+      m_Held[s] = (byte)ChordTimes.insert(m_Sorted, at, held, (short)timeMs);
+      m_Times[at + m_Next[s]] = (short)timeMs;
+      m_Next[s] = (byte)((m_Next[s] + 1) % m_SPAN);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The slots in use, for iterating with the getters below.
+   int[] getSlots() {
+      int[] slots = new int[m_Size];
+      int n = 0;
+      for (int s = 0; s < m_Keys.length; ++s) {
+         if (m_Keys[s] != 0) {
+            slots[n++] = s;
+         }
+      }
+      return slots;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int getPrev(int slot) {
+      return m_Keys[slot] >>> 9;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int getChord(int slot) {
+      return (m_Keys[slot] >>> 1) & Chord.sm_VALUES;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int getThumb(int slot) {
+      return m_Keys[slot] & 1;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int getSlotCount(int slot) {
+      return m_Held[slot];
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The mean of the interquartile times, or 0 if there are none.
+   int getMean(int slot) {
+      int count = m_Held[slot];
+      if (count == 0) {
+         return 0;
+      }
+      int trim = ChordTimes.getTrim(count);
+      int at = slot * m_SPAN;
+      int sum = 0;
+      for (int i = trim; i < count - trim; ++i) {
+         sum += m_Sorted[at + i];
+      }
+      return sum / (count - 2 * trim);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The entries as a count, then key, count and times oldest first.
+   void write(ByteBuffer bb) {
+      bb.putInt(m_Size);
+      for (int s = 0; s < m_Keys.length; ++s) {
+         if (m_Keys[s] != 0) {
+            int held = m_Held[s];
+            int first = held == m_SPAN ? m_Next[s] : 0;
+            bb.putInt(m_Keys[s]);
+            bb.put((byte)held);
+            for (int i = 0; i < held; ++i) {
+               bb.putShort(m_Times[s * m_SPAN + (first + i) % m_SPAN]);
+            }
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   int writeSize() {
+      int size = 4;
+      for (int s = 0; s < m_Keys.length; ++s) {
+         if (m_Keys[s] != 0) {
+            size += 5 + 2 * m_Held[s];
+         }
+      }
+      return size;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Reads what write() wrote, keeping the newest times if the span has
+   // shrunk. Returns false, keeping what was read, if bb is short.
+   boolean read(ByteBuffer bb) {
+      try {
+         int entries = bb.getInt();
+         for (int e = 0; e < entries; ++e) {
+            int key = bb.getInt();
+            int held = bb.get();
+            int prev = key >>> 9;
+            int chord = (key >>> 1) & Chord.sm_VALUES;
+            boolean valid = prev >= 1 && prev <= Chord.sm_VALUES && chord >= 1;
+            for (int i = 0; i < held; ++i) {
+               int timeMs = bb.getShort();
+               if (valid && timeMs > 0 && i >= held - m_SPAN) {
+                  add(prev, chord, key & 1, timeMs);
+               }
+            }
+         }
+      } catch (BufferUnderflowException e) {
+         return false;
+      }
+      return true;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Never 0, which marks an empty slot, as chord is at least 1.
+   private static int toKey(int prev, int chord, int thumb) {
+      return prev << 9 | chord << 1 | thumb;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The slot holding key, or the empty slot where it would go.
+   private int find(int key) {
+      int mask = m_Keys.length - 1;
+      // spread the chords over the table
+      int s = (key * 0x9E3779B9 >>> 16) & mask;
+      while (m_Keys[s] != 0 && m_Keys[s] != key) {
+         s = (s + 1) & mask;
+      }
+      return s;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void allocate(int slots) {
+      m_Keys = new int[slots];
+      m_Times = new short[slots * m_SPAN];
+      m_Sorted = new short[slots * m_SPAN];
+      m_Held = new byte[slots];
+      m_Next = new byte[slots];
+      m_Size = 0;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Doubles the table and moves the entries to their new slots.
+   private void grow() {
+      int[] keys = m_Keys;
+      short[] times = m_Times;
+      short[] sorted = m_Sorted;
+      byte[] held = m_Held;
+      byte[] next = m_Next;
+      allocate(keys.length * 2);
+      for (int from = 0; from < keys.length; ++from) {
+         if (keys[from] != 0) {
+            int to = find(keys[from]);
+            m_Keys[to] = keys[from];
+            m_Held[to] = held[from];
+            m_Next[to] = next[from];
+            System.arraycopy(times, from * m_SPAN, m_Times, to * m_SPAN, m_SPAN);
+            System.arraycopy(sorted, from * m_SPAN, m_Sorted, to * m_SPAN, m_SPAN);
+            ++m_Size;
+         }
+      }
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   // a power of 2
+   private static final int sm_INITIAL_SLOTS = 1 << 8;
+   private final int m_SPAN;
+   // prev << 9 | chord << 1 | thumb, or 0 if the slot is empty
+   private int[] m_Keys;
+   // m_SPAN times per slot, a ring from m_Next once full
+   private short[] m_Times;
+   // the same times in order
+   private short[] m_Sorted;
+   // the number of times held
+   private byte[] m_Held;
+   // where the next time goes in the ring
+   private byte[] m_Next;
+   private int m_Size;
+}
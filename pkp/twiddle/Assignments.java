@@ -14,13 +14,21 @@ package pkp.twiddle;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.io.File;
 import pkp.times.SortedChordTimes;
 import pkp.io.LineReader;
 import pkp.io.Io;
+import pkp.util.IndexSort;
 import pkp.util.Log;
 
 ///////////////////////////////////////////////////////////////////////////////
+// The list's own mutators keep the indexes that find() uses. Changes made
+// through an iterator or a subList() are not supported.
 public class Assignments extends ArrayList<Assignment> {
 
    ////////////////////////////////////////////////////////////////////////////
@@ -95,6 +103,8 @@ public class Assignments extends ArrayList<Assignment> {
    ////////////////////////////////////////////////////////////////////////////
    public Assignments(Assignments asgs) {
       super(asgs);
+      m_TwiddleIndex.putAll(asgs.m_TwiddleIndex);
+      m_KeyPressListIndex.putAll(asgs.m_KeyPressListIndex);
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -211,12 +221,14 @@ public class Assignments extends ArrayList<Assignment> {
 
    ////////////////////////////////////////////////////////////////////////////
    public int find(Twiddle tw) {
-      for (int i = 0; i < size(); ++i) {
-         if (get(i).isMap(tw)) {
-            return i;
-         }
-      }
-      return -1;
+      Integer i = m_TwiddleIndex.get(toKey(tw));
+      return i == null ? -1 : i;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public int find(KeyPressList kpl) {
+      Integer i = m_KeyPressListIndex.get(kpl);
+      return i == null ? -1 : i;
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -237,17 +249,122 @@ public class Assignments extends ArrayList<Assignment> {
          m_Remap.add(newAsg);
          return false;
       }
-      KeyPressList kpl = newAsg.getKeyPressList();
-      for (int i = 0; i < size(); ++i) {
-         if (newAsg.getKeyPressList().equals(get(i).getKeyPressList())) {
-            set(i, Assignment.combine(get(i), newAsg));
-            return true;
-         }
+      int i = find(newAsg.getKeyPressList());
+      if (i != -1) {
+         // the same keys with one more twiddle, so the rest stays indexed
+         super.set(i, Assignment.combine(get(i), newAsg));
+         index(i);
+         return true;
       }
 		super.add(newAsg);
+      index(size() - 1);
+      return true;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public boolean addAll(Collection<? extends Assignment> asgs) {
+      boolean added = false;
+      for (Assignment asg : asgs) {
+         added |= add(asg);
+      }
+      return added;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public void add(int i, Assignment asg) {
+      super.add(i, asg);
+      reindex();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public boolean addAll(int i, Collection<? extends Assignment> asgs) {
+      boolean added = super.addAll(i, asgs);
+      reindex();
+      return added;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public Assignment set(int i, Assignment asg) {
+      Assignment old = super.set(i, asg);
+      reindex();
+      return old;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public Assignment remove(int i) {
+      Assignment old = super.remove(i);
+      reindex();
+      return old;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public boolean remove(Object asg) {
+      if (!super.remove(asg)) {
+         return false;
+      }
+      reindex();
       return true;
    }
 
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public boolean removeAll(Collection<?> asgs) {
+      boolean removed = super.removeAll(asgs);
+      reindex();
+      return removed;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public boolean retainAll(Collection<?> asgs) {
+      boolean removed = super.retainAll(asgs);
+      reindex();
+      return removed;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public boolean removeIf(Predicate<? super Assignment> filter) {
+      boolean removed = super.removeIf(filter);
+      reindex();
+      return removed;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public void replaceAll(UnaryOperator<Assignment> operator) {
+      super.replaceAll(operator);
+      reindex();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public void sort(Comparator<? super Assignment> c) {
+      super.sort(c);
+      reindex();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   protected void removeRange(int from, int to) {
+      super.removeRange(from, to);
+      reindex();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @Override
+   public void clear() {
+      super.clear();
+      m_TwiddleIndex.clear();
+      m_KeyPressListIndex.clear();
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    public boolean isRemap() {
       return m_Remap.size() > 0;
@@ -286,6 +403,31 @@ public class Assignments extends ArrayList<Assignment> {
 
    // Private /////////////////////////////////////////////////////////////////
 
+   ////////////////////////////////////////////////////////////////////////////
+   // chords use 10 bits including the mouse finger
+   private static int toKey(Twiddle tw) {
+      return tw.getThumbKeys().toInt() << 16 | tw.getChord().toInt();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // the first assignment of a twiddle or keys is the one found
+   private void index(int i) {
+      Assignment asg = get(i);
+      for (int t = 0; t < asg.getTwiddleCount(); ++t) {
+         m_TwiddleIndex.putIfAbsent(toKey(asg.getTwiddle(t)), i);
+      }
+      m_KeyPressListIndex.putIfAbsent(asg.getKeyPressList(), i);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private void reindex() {
+      m_TwiddleIndex.clear();
+      m_KeyPressListIndex.clear();
+      for (int i = 0; i < size(); ++i) {
+         index(i);
+      }
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    private List<Assignment> getMouseButtonAssignments() {
       List<Assignment> mbs = new ArrayList<Assignment>(3);
@@ -325,9 +467,11 @@ public class Assignments extends ArrayList<Assignment> {
    }
 
    ////////////////////////////////////////////////////////////////////////////
+   // Unthumbed then thumbed, each in chord time order, then list order.
+   // Chords without a time are dropped.
    private static List<Assignment> sort(List<Assignment> asgs, SortedChordTimes times) {
-      List<Assignment> sorted = new ArrayList<Assignment>();
-      List<Assignment> sortedThumbed = new ArrayList<Assignment>();
+      // chord to rank + 1
+      int[] rank = new int[Chord.sm_VALUES + 1];
       for (int i = 0; i < times.getSize(); ++i) {
          String label = times.getSortedLabel(i);
          int chord = Chord.fromString(label);
@@ -335,21 +479,33 @@ public class Assignments extends ArrayList<Assignment> {
             Log.err("Badly formed chord \"" + times.getSortedLabel(i) + "\".");
             continue;
          }
-         for (Assignment a : asgs) {
-            Twiddle tw = a.getTwiddle(0);
-            if (tw.getChord().toInt() == chord) {
-               if (tw.getThumbKeys().isEmpty()) {
-                  sorted.add(a);
-               } else {
-                  sortedThumbed.add(a);
-               }
-            }
+         if (rank[chord] == 0) {
+            rank[chord] = i + 1;
          }
       }
-      sorted.addAll(sortedThumbed);
+      int[] keys = new int[asgs.size()];
+      int size = 0;
+      for (int a = 0; a < asgs.size(); ++a) {
+         Twiddle tw = asgs.get(a).getTwiddle(0);
+         int r = rank[tw.getChord().toInt()];
+         if (r == 0) {
+            keys[a] = Integer.MAX_VALUE;
+         } else {
+            keys[a] = r + (tw.getThumbKeys().isEmpty() ? 0 : Chord.sm_VALUES + 1);
+            ++size;
+         }
+      }
+      int[] index = IndexSort.sort(keys, true);
+      List<Assignment> sorted = new ArrayList<Assignment>(size);
+      for (int i = 0; i < size; ++i) {
+         sorted.add(asgs.get(index[i]));
+      }
       return sorted;
    }
 
    // Data ////////////////////////////////////////////////////////////////////
    private List<Assignment> m_Remap = new ArrayList<Assignment>();
+   // twiddle (toKey()) and keys to index
+   private HashMap<Integer, Integer> m_TwiddleIndex = new HashMap<Integer, Integer>();
+   private HashMap<KeyPressList, Integer> m_KeyPressListIndex = new HashMap<KeyPressList, Integer>();
 }
@@ -7,13 +7,13 @@
 package pkp.twiddle;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.net.URL;
 import java.net.MalformedURLException;
 import pkp.lookup.LookupTable;
 import pkp.lookup.LookupTableBuilder;
-import pkp.lookup.LookupBuilder.Duplicates;
 import pkp.io.LineReader;
 import pkp.io.Io;
 import pkp.util.Pref;
@@ -43,29 +43,22 @@ public class KeyMap {
 
    ////////////////////////////////////////////////////////////////////////////
    public Assignment findLongestPrefix(KeyPressList kpl) {
-      if (kpl.size() == 0) {
+      int i = find(kpl, 0, 0);
+      if (i < 0) {
          return null;
       }
-      KeyPress kp0 = kpl.get(0);
-      int asgIndex[] = m_KeyPressIndex.getAll(kp0.getKeyCode(), kp0.getModifiers().toInt());
-      if (asgIndex == null) {
-         return null;
-      } 
-      // only one assignment can match a given prefix
-      int maxI = -1;
-      int maxLen = 0;
-      for (int i = 1; i < asgIndex[0]; ++i) {
-         KeyPressList found = m_Assignments.get(asgIndex[i]).getKeyPressList();
-//System.out.println("keymap findLongestPrefix kpl found " + found.toString());
-         if (kpl.startsWith(found) && found.size() > maxLen) {
-            maxLen = found.size();
-            maxI = i;
-         }
-      }
-      if (maxI < 0) {
+      return m_Assignments.get(i);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Looks up the keys from start on, as if the leading keys that include mod
+   // were without it.
+   Assignment findLongestPrefix(KeyPressList kpl, int start, Modifiers mod) {
+      int i = find(kpl, start, mod.toInt());
+      if (i < 0) {
          return null;
       }
-      return m_Assignments.get(asgIndex[maxI]);
+      return m_Assignments.get(i);
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -100,7 +93,6 @@ public class KeyMap {
    ////////////////////////////////////////////////////////////////////////////
    private KeyMap() {
       m_Assignments = new Assignments();
-      m_KeyPressIndex = null;
       m_TwiddleIndex = null;
    }
 
@@ -127,10 +119,6 @@ public class KeyMap {
 
    ////////////////////////////////////////////////////////////////////////////
    private void index() {
-      // A = 0x04, NumpadEqual = 0x67
-      LookupTableBuilder keyPressLtb = new LookupTableBuilder(0, 0x67);
-      keyPressLtb.setMessage(" building the keystroke table.");
-      keyPressLtb.setDuplicates(Duplicates.STORE);
       LookupTableBuilder twiddleLtb = new LookupTableBuilder(1, Chord.sm_VALUES);
       twiddleLtb.setMessage(" building the chord table.");
       ArrayList<Twiddle> dup = new ArrayList<Twiddle>();
@@ -142,8 +130,6 @@ public class KeyMap {
                dup.add(tw);
             }
          }
-         KeyPress kp = asg.getKeyPressList().get(0);
-         keyPressLtb.add(kp.getKeyCode(), kp.getModifiers().toInt(), i);
       }
       if (dup.size() > 0) {
          String str = "";
@@ -152,14 +138,98 @@ public class KeyMap {
          }
          Log.warn("<html><tt>" + str + "</tt>mapped more than once.</html>");
       }
-      m_KeyPressIndex = keyPressLtb.build();
       m_TwiddleIndex = twiddleLtb.build();
+      indexKeyPresses();
   }
 
+   ////////////////////////////////////////////////////////////////////////////
+   // Builds a trie of the assignments' keystrokes. Node 0 is the root, and
+   // the edge from node n on keystroke k is hashed on (n, k).
+   private void indexKeyPresses() {
+      int keys = 0;
+      for (int i = 0; i < m_Assignments.size(); ++i) {
+         keys += m_Assignments.get(i).getKeyPressList().size();
+      }
+      int slots = Integer.highestOneBit(Math.max(keys, 1)) * 4;
+      m_TrieKeys = new long[slots];
+      m_TrieChildren = new int[slots];
+      Arrays.fill(m_TrieChildren, sm_NO_NODE);
+      m_TrieFound = new int[keys + 1];
+      Arrays.fill(m_TrieFound, -1);
+      int nodes = 1;
+      for (int i = 0; i < m_Assignments.size(); ++i) {
+         KeyPressList kpl = m_Assignments.get(i).getKeyPressList();
+         int node = sm_ROOT;
+         for (int j = 0; j < kpl.size(); ++j) {
+            long key = edge(node, kpl.get(j).toInt());
+            int slot = findSlot(key);
+            if (m_TrieChildren[slot] == sm_NO_NODE) {
+               m_TrieKeys[slot] = key;
+               m_TrieChildren[slot] = nodes++;
+            }
+            node = m_TrieChildren[slot];
+         }
+         // only one assignment can match a given prefix, the first
+         if (m_TrieFound[node] == -1) {
+            m_TrieFound[node] = i;
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Returns the index of the longest assignment that the keys of kpl from
+   // start on begin with, or -1. Leading keys that include all the modifiers
+   // in mod are matched without them, and the match stops at the first that
+   // does not.
+   private int find(KeyPressList kpl, int start, int mod) {
+      int found = -1;
+      int node = sm_ROOT;
+      int modBits = mod << KeyPress.sm_KEYCODE_BITS;
+      for (int i = start; i < kpl.size(); ++i) {
+         int kp = kpl.get(i).toInt();
+         if ((kp & modBits) != modBits) {
+            break;
+         }
+         int child = m_TrieChildren[findSlot(edge(node, kp & ~modBits))];
+         if (child == sm_NO_NODE) {
+            break;
+         }
+         node = child;
+         if (m_TrieFound[node] != -1) {
+            found = m_TrieFound[node];
+         }
+      }
+      return found;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static long edge(int node, int keyPress) {
+      // toInt() sign extends the right gui modifier
+      return (long)node << 16 | keyPress & 0xFFFF;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // linear probing, returns key's slot or the empty slot it would go in
+   private int findSlot(long key) {
+      int mask = m_TrieKeys.length - 1;
+      int h = (int)(key ^ key >>> 32) * 0x9e3779b9;
+      int i = (h ^ h >>> 16) & mask;
+      while (m_TrieChildren[i] != sm_NO_NODE && m_TrieKeys[i] != key) {
+         i = (i + 1) & mask;
+      }
+      return i;
+   }
+
    // Data ////////////////////////////////////////////////////////////////////
    private Assignments m_Assignments;
-   private LookupTable m_KeyPressIndex;
    private LookupTable m_TwiddleIndex;
+   // keystroke trie, read only once built so lookups are thread safe
+   private static final int sm_ROOT = 0;
+   private static final int sm_NO_NODE = -1;
+   private long[] m_TrieKeys;
+   private int[] m_TrieChildren;
+   // node to index of the assignment ending there or -1
+   private int[] m_TrieFound;
 
    // Main ////////////////////////////////////////////////////////////////////
    public static void main(String[] args) {
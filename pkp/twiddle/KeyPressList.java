@@ -42,11 +42,21 @@ public class KeyPressList extends java.lang.Object {
 
    ////////////////////////////////////////////////////////////////////////////
    public static KeyPressList parseTextAndTags(String str, StringBuilder err) {
+      return parseTextAndTags(str, null, err);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // If ends is not null (and is at least as long as str) a keypress that
+   // fails to parse is kept as an invalid one rather than failing the list,
+   // and ends[i] is set to the offset in str after the ith keypress and any
+   // closing tags that follow it.
+   public static KeyPressList parseTextAndTags(String str, int[] ends, StringBuilder err) {
 //System.out.printf("parseTextAndTags() |%s| [%c] \\x%x%n", str, str.charAt(0),  (int)str.charAt(0));
       KeyPressList kpl = new KeyPressList();
       Modifiers tagMod = Modifiers.sm_EMPTY;
 		for (int i = 0; i < str.length(); ++i) {
 			KeyPress kp = null;
+         boolean closing = false;
          char c = str.charAt(i);
          if (c != '<') {
 //System.out.printf("parseTextAndTags1 [%d] |%c| (%d) tagMod 0x%x%n", i, c, (int)c, tagMod.toInt());
@@ -55,17 +65,21 @@ public class KeyPressList extends java.lang.Object {
             // for ++i will re-add 1
             i = swo.getOffset() - 1;
          } else {
-            String rest = str.substring(i + 1);
-            int end = rest.indexOf('>');
+            int end = str.indexOf('>', i + 1);
             // accept unescaped < if at EOL
-            if (end < 0 || rest.substring(0, end).indexOf('<') >= 0) {
+            if (end < 0 || str.lastIndexOf('<', end) > i) {
 //System.out.printf("parseTextAndTags3 [%d] |%c| (%d) tagMod 0x%x%n", i, c, (int)c, tagMod.toInt());
                kp = KeyPress.parseText(c, tagMod, err);
             } else {
-//System.out.printf("parseTextAndTags4 [%d] |%s| tagMod \\x%x%n", i, rest.substring(0, end), tagMod.toInt());
-					i += end + 1;
-               kp = KeyPress.parseTag(rest.substring(0, end), tagMod, err);
+               String tag = str.substring(i + 1, end);
+//System.out.printf("parseTextAndTags4 [%d] |%s| tagMod \\x%x%n", i, tag, tagMod.toInt());
+					i = end;
+               closing = tag.startsWith("/");
+               kp = KeyPress.parseTag(tag, tagMod, err);
                if (kp.isModifiers()) {
+                  if (closing && ends != null && kpl.size() > 0) {
+                     ends[kpl.size() - 1] = i + 1;
+                  }
                   if (kp.getModifiers() == Modifiers.sm_END) {
                      tagMod = Modifiers.sm_EMPTY;
                      continue;
@@ -77,10 +91,18 @@ public class KeyPressList extends java.lang.Object {
          }
          if (!kp.isValid()) {
             Log.log(String.format("Failed to find keypress for \"%c\" [%d] in \"%s\" (%s)", c, (int)c, str, err));
-            return new KeyPressList();
+            if (ends == null) {
+               return new KeyPressList();
+            }
+            ends[kpl.size()] = i + 1;
+            kpl.add(kp);
+            continue;
          }
 //System.out.printf("parseTextAndTags5 add: keycode 0x%x mod 0x%x%n", kp.getKeyCode(), kp.getModifiers().toInt());
          kpl.append(kp, str);
+         if (ends != null && kp.getKeyCode() != 0) {
+            ends[kpl.size() - 1] = i + 1;
+         }
       }
 //System.out.println("parseTextAndTags6 " + kpl);
       return kpl;
@@ -122,6 +144,17 @@ public class KeyPressList extends java.lang.Object {
       return true;
    }
 
+   ////////////////////////////////////////////////////////////////////////////
+   // Keys are equal when their toInt()s are.
+   @Override
+   public int hashCode() {
+      int hash = 0;
+      for (KeyPress kp : m_List) {
+         hash = hash * 31 + kp.toInt();
+      }
+      return hash;
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    public Assignment findLongestPrefix(KeyMap map) {
 //System.out.println("findLongestPrefix: \"" + toString() + "\"");
@@ -129,16 +162,23 @@ public class KeyPressList extends java.lang.Object {
          Log.err("KeyPressList is empty");
          return null;
       }
+      return findLongestPrefix(map, 0);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Finds the longest prefix of the keys from start on.
+   public Assignment findLongestPrefix(KeyMap map, int start) {
+      if (start >= size() || !get(start).isValid()) {
+         return null;
+      }
       // lookup as-is first
-      Assignment asg = map.findLongestPrefix(this);
-      if (asg == null && !get(0).getModifiers().isEmpty()) {
+      Assignment asg = map.findLongestPrefix(this, start, Modifiers.sm_EMPTY);
+      if (asg == null && !get(start).getModifiers().isEmpty()) {
          // try stripping off modifiers
-         final Modifiers mods[] = Modifiers.getCombinations(get(0).getModifiers());
-//System.out.printf("findLongestPrefix: button mods: %s (%s)%n", get(0).getModifiers(), Modifiers.toString(mods));
+         final Modifiers mods[] = Modifiers.getCombinations(get(start).getModifiers());
+//System.out.printf("findLongestPrefix: button mods: %s (%s)%n", get(start).getModifiers(), Modifiers.toString(mods));
          for (int i = 0; i < mods.length; ++i) {
-            KeyPressList kpl = getPrefixMinusModifiers(mods[i]);
-//System.out.printf("findLongestPrefix: button mods[i] 0x%x kpl %s%n", mods[i].toInt(), kpl.toString());
-            asg = map.findLongestPrefix(kpl);
+            asg = map.findLongestPrefix(this, start, mods[i]);
             if (asg != null) {
 //System.out.println("findLongestPrefix: asg " + asg);
 //System.out.printf("findLongestPrefix: mod 0x%x%n", mods[i].toInt());
@@ -223,20 +263,6 @@ public class KeyPressList extends java.lang.Object {
 
    // Private /////////////////////////////////////////////////////////////////
 
-   ////////////////////////////////////////////////////////////////////////////
-   private KeyPressList getPrefixMinusModifiers(Modifiers mod) {
-//System.out.printf("kpl getPrefixMinusModifiers: mods 0x%x kpl %s (%d)%n", mod.toInt(), toString(), size());
-      KeyPressList kpl = new KeyPressList();
-      for (int i = 0; i < size(); ++i) {
-         if (mod.isSubsetOf(get(i).getModifiers())) {
-            kpl.add(new KeyPress(get(i).getKeyCode(), get(i).getModifiers().minus(mod)));
-         } else {
-           break;
-         }
-      }
-      return kpl;
-   }
-
    ////////////////////////////////////////////////////////////////////////////
    private boolean append(KeyPress kp, String str) {
 //System.out.println("append: |" + kp.toString() + "| str \"" + str + "\"");
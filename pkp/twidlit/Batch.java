@@ -0,0 +1,560 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * Batch.java
+ */
+
+package pkp.twidlit;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import pkp.chars.ChordUsage;
+import pkp.chars.Counts;
+import pkp.chars.LayoutCosts;
+import pkp.twiddle.Chord;
+import pkp.twiddle.KeyMap;
+import pkp.twiddle.KeyPress;
+import pkp.twiddler.Cfg;
+import pkp.times.ChordTimes;
+import pkp.times.SortedChordTimes;
+import pkp.utilities.ChordGroups;
+import pkp.utilities.ChordMapping;
+import pkp.utilities.ChordOptimizer;
+import pkp.util.Util;
+import pkp.util.Persist;
+import pkp.util.Pref;
+import pkp.util.Log;
+import pkp.io.Io;
+
+////////////////////////////////////////////////////////////////////////////////
+// Runs the counting, mapping and grouping tools from the command line
+// without the UI, writing the results to stdout or the -o file.
+// Warnings and errors go to stderr, and errors exit with status 1.
+class Batch {
+
+   /////////////////////////////////////////////////////////////////////////////
+   static boolean convertCfg(String homeDir, String rfname, String wfname, String version,
+                             Boolean mrl, Boolean mirror) {
+      File rf = null;
+      if (rfname == null || rfname.equals("-w")) {
+         rf = Io.createFile(Persist.get(TwidlitMenu.sm_CFG_DIR_PERSIST, homeDir),
+                            Persist.get(TwidlitMenu.sm_CFG_FILE_PERSIST, ""));
+      } else {
+         rf =  new File(rfname);
+         if (rf.isDirectory()) {
+            rf = Io.createFile(rfname,
+                               Persist.get(TwidlitMenu.sm_CFG_FILE_PERSIST, ""));
+         }
+      }
+      if (rf.isDirectory()) {
+         rf = Io.createFile(rfname, "twiddler.cfg");
+      }
+      if (!Io.fileExists(rf)) {
+         Log.warn("Failed to find input file \"" + rf.getPath() + "\".");
+         return false;
+      }
+      int v;
+      try {
+         v = Integer.parseInt(version);
+      } catch (NumberFormatException e) {
+         Log.warn("-v expects a number, not \"" + version + "\".");
+         return false;
+      }
+      Cfg cfg = Cfg.read(rf);
+      if (cfg == null) {
+         Log.warn("Failed to parse input file \"" + rf.getPath() + "\".");
+         return false;
+      }
+      if (mirror) {
+         cfg = new Cfg(cfg, cfg.getAssignments().reversed());
+      }
+      if (Cfg.isBinary(rf.getPath())) {
+         if (mrl) {
+            Chord.use4Finger(false);
+         }
+         if (wfname == null) {
+            System.out.println(cfg.toString());
+         } else {
+            Io.write(new File(wfname), cfg.toString());
+         }
+         return true;
+      }
+      if (wfname == null) {
+         wfname = "twiddler.cfg";
+      }
+      File wf = new File(wfname);
+      if (wf.isDirectory()) {
+         wf = Io.createFile(wfname, "twiddler.cfg");
+      } else if (!Cfg.isBinary(wfname)) {
+         wf = new File(wfname + ".cfg");
+      }
+      cfg.write(wf, v - 2);
+      return true;
+   }
+
+   // Private //////////////////////////////////////////////////////////////////
+
+   /////////////////////////////////////////////////////////////////////////////
+   private Batch(String[] args) {
+      m_Args = args;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean run(String command) {
+      switch (command) {
+      case "count":
+         return count(null);
+      case "ngram-count": {
+         File nGrams = getFile("-n", true);
+         return nGrams != null && count(nGrams);
+      }
+      case "watch":
+         return watch();
+      case "chord-count":
+         return chordCount();
+      case "cost":
+         return cost();
+      case "optimize":
+         return optimize();
+      case "map":
+         return map();
+      case "assess":
+         return assess();
+      case "group":
+         return group();
+      case "transitions": {
+         Long max = getNumber("-max", 100, 0, Integer.MAX_VALUE);
+         if (max == null) {
+            return false;
+         }
+         ChordTimes times = new ChordTimes(false, !has("-left"));
+         SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+         return write(times.header("Slowest transitions", df.format(Calendar.getInstance().getTime()))
+                    + times.listSlowestTransitions(max.intValue()));
+      }
+      case "convert-cfg":
+         return convertCfg(getValue("-home", "."),
+                           getValue("-r", null),
+                           getValue("-w", null),
+                           getValue("-v", "5"),
+                           has("-0"),
+                           has("-m"));
+      default:
+         System.err.print(sm_USAGE);
+         return false;
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean count(File nGrams) {
+      List<File> files = getFiles();
+      Counts counts = createCounts(nGrams);
+      if (files == null || counts == null) {
+         return false;
+      }
+      counts.count(files, null);
+      return write(has("-graph") ? counts.graph(null) : counts.table(null));
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // Writes the counts of a folder each time they change, until killed.
+   private boolean watch() {
+      List<String> names = getFileNames();
+      if (names.size() != 1 || !(new File(names.get(0))).isDirectory()) {
+         Log.warn("watch expects one folder.");
+         return false;
+      }
+      Counts counts = createCounts(null);
+      if (counts == null) {
+         return false;
+      }
+      final boolean graph = has("-graph");
+      counts.watch(new File(names.get(0)), new Counts.Listener() {
+         @Override
+         public void countsChanged(Counts snapshot) {
+            write(graph ? snapshot.graph(null) : snapshot.table(null));
+         }
+      });
+      for (;;) {
+         try {
+            Thread.sleep(Long.MAX_VALUE);
+         } catch (InterruptedException e) {
+            counts.stopWatching();
+            return true;
+         }
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // Counts set up by the count options, or null if one is bad.
+   private Counts createCounts(File nGrams) {
+      Long min = getNumber("-min", 1, 0, Long.MAX_VALUE);
+      Long max = getNumber("-max", Long.MAX_VALUE, 0, Long.MAX_VALUE);
+      Long frequent = getNumber("-frequent", 0, 0, Integer.MAX_VALUE);
+      Long top = getNumber("-top", 100, 0, Integer.MAX_VALUE);
+      if (min == null || max == null || frequent == null || top == null) {
+         return null;
+      }
+      Counts counts = new Counts(nGrams, min, max);
+      counts.setShowBigrams(has("-bigrams"));
+      counts.setFrequentNGrams(frequent.intValue(), top.intValue());
+      return counts;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean chordCount() {
+      File cfgF = getFile("-m", true);
+      if (cfgF == null) {
+         return false;
+      }
+      Cfg cfg = Cfg.read(cfgF);
+      if (cfg == null) {
+         Log.warn("Failed to read \"" + cfgF.getPath() + "\".");
+         return false;
+      }
+      List<File> files = getFiles();
+      Long min = getNumber("-min", 1, 0, Integer.MAX_VALUE);
+      if (files == null || min == null) {
+         return false;
+      }
+      ChordUsage usage = new ChordUsage(new KeyMap(cfg.getAssignments()));
+      usage.count(files);
+      if (usage.getUnmapped() > 0) {
+         Log.log(String.format("%d keystrokes are not mapped by %s.", usage.getUnmapped(), cfgF.getPath()));
+      }
+      return write(has("-transitions")
+                   ? usage.transitionTable(min.intValue())
+                   : usage.table(has("-thumbs")));
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean cost() {
+      String name = getValue("-m", null);
+      if (name == null) {
+         Log.warn("No -m cfg file or folder given.");
+         return false;
+      }
+      File cfgs = new File(name).getAbsoluteFile();
+      if (!cfgs.exists()) {
+         Log.warn("Did not find \"" + name + "\".");
+         return false;
+      }
+      List<String> names = new ArrayList<String>();
+      List<KeyMap> maps = new ArrayList<KeyMap>();
+      for (File f : Io.listAllFilesInTree(cfgs)) {
+         Cfg cfg = Cfg.read(f);
+         if (cfg == null) {
+            Log.warn("Skipped \"" + f.getPath() + "\" as it is not a cfg.");
+         } else {
+            names.add(f.getPath());
+            maps.add(new KeyMap(cfg.getAssignments()));
+         }
+      }
+      List<File> files = getFiles();
+      if (maps.isEmpty() || files == null) {
+         return false;
+      }
+      LayoutCosts costs = new LayoutCosts(names, maps, new ChordTimes(false, !has("-left")));
+      costs.count(files);
+      return write(costs.table());
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean map() {
+      File chords = getFile("-c", true);
+      File keys = getFile("-k", true);
+      File map = getFile("-m", false);
+      if (chords == null || keys == null || (has("-m") && map == null)) {
+         return false;
+      }
+      ChordMapping mapping = new ChordMapping(has("-sort") ? getChordTimes() : null);
+      mapping.setSortChords(has("-sort"));
+      mapping.setSkipDuplicateKeys(!has("-keep-duplicates"));
+      mapping.setShowEmpty(has("-show-unmapped"));
+      mapping.map(map, chords, keys);
+      if (mapping.getDuplicateKeys() > 0) {
+         Log.warn(String.format("%d duplicate keystrokes (eg %s) were %s in %s.",
+                                mapping.getDuplicateKeys(), mapping.getDuplicateKey(),
+                                has("-keep-duplicates") ? "found" : "skipped", keys.getPath()));
+      }
+      return write(mapping.getMap());
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean optimize() {
+      File chords = getFile("-c", false);
+      File start = getFile("-m", false);
+      if ((has("-c") && chords == null) || (has("-m") && start == null)) {
+         return false;
+      }
+      Long penalty = getNumber("-penalty", 50, 0, Integer.MAX_VALUE);
+      Long iterations = getNumber("-iterations", 1000000, 0, Integer.MAX_VALUE);
+      Long chains = getNumber("-chains", 1, 0, Integer.MAX_VALUE);
+      Long seed = getNumber("-seed", 0, Long.MIN_VALUE, Long.MAX_VALUE);
+      if (penalty == null || iterations == null || chains == null || seed == null) {
+         return false;
+      }
+      int[] chordMs = getChordMs(chords);
+      List<File> files = getFiles();
+      if (chordMs == null || files == null) {
+         return false;
+      }
+      Counts counts = new Counts(null, 1, Long.MAX_VALUE);
+      counts.setShowBigrams(true);
+      counts.count(files, null);
+      ChordOptimizer opt = new ChordOptimizer(chordMs, counts, penalty.intValue());
+      opt.setIterations(iterations.intValue());
+      if (has("-chains")) {
+         opt.setChains(chains.intValue());
+      }
+      opt.setSeed(seed);
+      if (start != null) {
+         Cfg cfg = Cfg.read(start);
+         if (cfg == null) {
+            Log.warn("Failed to read \"" + start.getPath() + "\".");
+            return false;
+         }
+         opt.setStart(new KeyMap(cfg.getAssignments()));
+      }
+      opt.optimize();
+      return write(opt.getMap());
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // The time of each chord value from the chords file, or the tutor's mean
+   // times if none, with the mean time for those without.
+   private int[] getChordMs(File chords) {
+      int[] chordMs = new int[Chord.sm_VALUES + 1];
+      long sum = 0;
+      int count = 0;
+      if (chords == null) {
+         ChordTimes times = new ChordTimes(false, !has("-left"));
+         for (int c = 1; c <= Chord.sm_VALUES; ++c) {
+            chordMs[c] = times.getMean(c, 0);
+         }
+      } else {
+         SortedChordTimes times = new SortedChordTimes(chords);
+         for (int i = 0; i < times.getSize(); ++i) {
+            int c = times.getSortedLabel(i) == null ? 0 : Chord.fromString(times.getSortedLabel(i));
+            if (c > 0 && times.getSortedValue(i) != Integer.MAX_VALUE) {
+               chordMs[c] = times.getSortedValue(i);
+            }
+         }
+      }
+      for (int c = 1; c <= Chord.sm_VALUES; ++c) {
+         if (chordMs[c] > 0) {
+            sum += chordMs[c];
+            ++count;
+         }
+      }
+      if (count == 0) {
+         Log.warn("There are no chord times.");
+         return null;
+      }
+      for (int c = 1; c <= Chord.sm_VALUES; ++c) {
+         if (chordMs[c] == 0) {
+            chordMs[c] = (int)(sum / count);
+         }
+      }
+      return chordMs;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean assess() {
+      File map = getFile("-m", true);
+      File chords = getFile("-c", false);
+      File keys = getFile("-k", true);
+      if (map == null || keys == null || (has("-c") && chords == null)) {
+         return false;
+      }
+      ChordMapping mapping = new ChordMapping(chords == null ? getChordTimes() : null);
+      mapping.setMoreDetail(has("-detail"));
+      mapping.assess(map, chords, keys);
+      return write(mapping.getAssessment());
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean group() {
+      File chords = getFile("-c", false);
+      if (has("-c") && chords == null) {
+         return false;
+      }
+      if (has("-used") && chords == null) {
+         Log.warn("Grouping used chords needs a chords file (-c).");
+         return false;
+      }
+      Long min = getNumber("-min", 1, 0, Integer.MAX_VALUE);
+      if (min == null) {
+         return false;
+      }
+      String mask = getValue("-mask", null);
+      String fixed = getValue("-fixed", null);
+      String accept = getValue("-accept", "????");
+      if (mask == null && fixed == null) {
+         mask = "????";
+      }
+      for (String m : new String[]{mask, fixed, accept}) {
+         if (m != null && m.length() != 4) {
+            Log.warn("Mask \"" + m + "\" is not 4 characters.");
+            return false;
+         }
+      }
+      return write(ChordGroups.report(chords,
+                                      !has("-used"),
+                                      has("-text"),
+                                      getValue("-priority", "1234"),
+                                      mask, fixed, accept,
+                                      min.intValue()));
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // The tutor's chord times, as the dialogs use.
+   private SortedChordTimes getChordTimes() {
+      return new SortedChordTimes(new ChordTimes(false, !has("-left")));
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean has(String opt) {
+      return Util.getOptionIndex(opt, m_Args) != -1;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private String getValue(String opt, String deflt) {
+      return Util.getOptionValue(opt, deflt, m_Args);
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // The value of opt, or null if it is not a number from min to max.
+   private Long getNumber(String opt, long deflt, long min, long max) {
+      String value = getValue(opt, null);
+      if (value == null) {
+         return deflt;
+      }
+      try {
+         long n = Long.parseLong(value);
+         if (n >= min && n <= max) {
+            return n;
+         }
+      } catch (NumberFormatException e) {}
+      Log.warn(opt + " expects a number from " + min + " to " + max + ", not \"" + value + "\".");
+      return null;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private File getFile(String opt, boolean required) {
+      String name = getValue(opt, null);
+      if (name == null) {
+         if (required) {
+            Log.warn("No " + opt + " file given.");
+         }
+         return null;
+      }
+      // files are found relative to the jar unless absolute
+      File f = new File(name).getAbsoluteFile();
+      if (!Io.fileExists(f)) {
+         Log.warn("Did not find \"" + name + "\".");
+         return null;
+      }
+      return f;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // The files named and the files in the folders named, or null.
+   private List<File> getFiles() {
+      List<File> files = new ArrayList<File>();
+      for (String name : getFileNames()) {
+         File f = new File(name).getAbsoluteFile();
+         if (!f.exists()) {
+            Log.warn("Did not find \"" + name + "\".");
+            return null;
+         }
+         files.addAll(Io.listAllFilesInTree(f));
+      }
+      if (files.isEmpty()) {
+         Log.warn("No files to count.");
+         return null;
+      }
+      return files;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   // The arguments that are neither options nor their values.
+   private List<String> getFileNames() {
+      List<String> names = new ArrayList<String>();
+      for (int i = 0; i < m_Args.length; ++i) {
+         if (m_Args[i].startsWith("-")) {
+            if (sm_VALUE_OPTIONS.contains(m_Args[i])) {
+               ++i;
+            }
+         } else {
+            names.add(m_Args[i]);
+         }
+      }
+      return names;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean write(String str) {
+      String out = getValue("-o", null);
+      if (out == null) {
+         System.out.print(str);
+         System.out.flush();
+      } else {
+         Io.write(new File(out), str);
+      }
+      return true;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   private static void init(String homeDir) {
+      Log.init(Log.ExitOnError);
+      Log.setConsole(true);
+      Persist.init("twidlit.properties", homeDir, "pref");
+      Pref.init("twidlit.preferences", Persist.get("#.pref.dir"), "pref");
+      KeyPress.init();
+   }
+
+   // Data /////////////////////////////////////////////////////////////////////
+   private static final List<String> sm_VALUE_OPTIONS =
+      Arrays.asList("-home", "-o", "-n", "-m", "-c", "-k", "-min", "-max",
+                    "-penalty", "-iterations", "-chains", "-seed",
+                    "-frequent", "-top", "-priority", "-mask", "-fixed", "-accept",
+                    "-r", "-w", "-v");
+   private static final String sm_USAGE =
+        "usage: Batch <command> [-home <folder>] [-o <file>] <options>\n"
+      + "  count [-bigrams] [-graph] [-min <n>] [-max <n>]\n"
+      + "        [-frequent <max length> [-top <n>]] <file or folder>...\n"
+      + "  ngram-count -n <ngrams file> [count options] <file or folder>...\n"
+      + "  watch [count options] <folder>\n"
+      + "  chord-count -m <cfg> [-thumbs | -transitions [-min <n>]] <file or folder>...\n"
+      + "  cost -m <cfg or folder of cfgs> [-left] <file or folder>...\n"
+      + "  optimize [-c <chord times> | -left] [-m <start cfg>] [-penalty <ms>]\n"
+      + "           [-iterations <n>] [-chains <n>] [-seed <n>] <file or folder>...\n"
+      + "  map -c <chords> -k <keystrokes> [-m <map>] [-sort [-left]] [-keep-duplicates] [-show-unmapped]\n"
+      + "  assess -m <map> [-c <chord times> | -left] -k <keystrokes> [-detail]\n"
+      + "  group [-c <chords>] [-used] [-text] [-priority <1234>]\n"
+      + "        [-mask <mask> | -fixed <mask> [-accept <mask>] [-min <n>]]\n"
+      + "  transitions [-left] [-max <n>]\n"
+      + "  convert-cfg [-r <cfg>] [-w <cfg>] [-v <version>] [-0] [-m]\n"
+      + "Files ending in .gz or .zip are read expanded.\n";
+   private final String[] m_Args;
+
+   // Main /////////////////////////////////////////////////////////////////////
+   public static void main(String[] argv) {
+      if (argv.length == 0) {
+         System.err.print(sm_USAGE);
+         System.exit(2);
+      }
+      // fail rather than open a window
+      System.setProperty("java.awt.headless", "true");
+      Batch batch = new Batch(Arrays.copyOfRange(argv, 1, argv.length));
+      init(batch.getValue("-home", "."));
+      boolean ok = batch.run(argv[0]);
+      Log.close();
+      System.exit(ok ? 0 : 1);
+   }
+}
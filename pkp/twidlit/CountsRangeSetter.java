@@ -20,9 +20,9 @@ import pkp.util.Log;
 class CountsRangeSetter implements ActionListener {
 
    ///////////////////////////////////////////////////////////////////
-   CountsRangeSetter(Window owner, int min, int max) {
-      m_Min = new IntegerTextField(min, 0, Integer.MAX_VALUE);
-      m_Max = new IntegerTextField(max, 0, Integer.MAX_VALUE);
+   CountsRangeSetter(Window owner, long min, long max) {
+      m_Min = new IntegerTextField(min, 0, Long.MAX_VALUE);
+      m_Max = new IntegerTextField(max, 0, Long.MAX_VALUE);
       m_Ok = false;
       m_Dialog = new ControlDialog(owner, "Range of Counts Displayed");
       m_Dialog.setModal(true);
@@ -41,13 +41,13 @@ class CountsRangeSetter implements ActionListener {
    }
    
    ///////////////////////////////////////////////////////////////////
-   int getMinimum() {
-      return (Integer)m_Min.getValue();
+   long getMinimum() {
+      return (Long)m_Min.getValue();
    }
    
    ///////////////////////////////////////////////////////////////////
-   int getMaximum() {
-      return (Integer)m_Max.getValue();
+   long getMaximum() {
+      return (Long)m_Max.getValue();
    }
    
    ///////////////////////////////////////////////////////////////////
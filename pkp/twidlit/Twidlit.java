@@ -27,7 +27,6 @@ import pkp.twiddle.KeyMap;
 import pkp.twiddle.KeyPress;
 import pkp.twiddle.KeyPressList;
 import pkp.twiddle.Twiddle;
-import pkp.twiddler.Cfg;
 import pkp.times.ChordTimes;
 import pkp.ui.Splash;
 import pkp.ui.PersistentWindow;
@@ -351,6 +350,7 @@ class Twidlit
          m_ChordTimes.persist("");
       }
       m_ChordTimes = new ChordTimes(keys, isRightHand());
+      m_PrevChord = 0;
    }
 
    ////////////////////////////////////////////////////////////////////////////
@@ -412,17 +412,20 @@ class Twidlit
          m_TwiddlerWindow.markMismatch(tw);
          // continue time
          m_TimeMs = 0;
+         m_PrevChord = 0;
       } else {
          // only accept chord if not timing or successfully timed
-         m_TextPanel.next(
-               !m_Timed
-            || tw.getChord().isMouseButton()
+         boolean timed = m_Timed
+            && !tw.getChord().isMouseButton()
             // only record times within 2* progress bar
-            || (m_TimeMs < (int)(0.5 + m_ProgressFactor * m_TwiddlerWindow.getProgressMax())
-             && m_ChordTimes.add(tw.getChord().toInt(),
-                                 tw.getThumbKeys().toInt(),
-                                 m_TimeMs))
-         );
+            && m_TimeMs < (int)(0.5 + m_ProgressFactor * m_TwiddlerWindow.getProgressMax())
+            && m_ChordTimes.add(m_PrevChord,
+                                tw.getChord().toInt(),
+                                tw.getThumbKeys().toInt(),
+                                m_TimeMs);
+         m_TextPanel.next(!m_Timed || tw.getChord().isMouseButton() || timed);
+         // the next chord's time is a transition from this one
+         m_PrevChord = timed ? tw.getChord().toInt() : 0;
 //System.out.printf("%s %s%n", tw.getChord(), m_ChordTimes.getTimes(tw.getChord().toInt(), 0));
          m_TwiddlerWindow.show(next, tw, m_ChordTimes);
          // start time
@@ -431,59 +434,6 @@ class Twidlit
       }
    }
    
-   /////////////////////////////////////////////////////////////////////////////
-   private static void translate(String rfname, String wfname, String version,
-                                 Boolean mrl, Boolean mirror) {
-      File rf = null;
-      if (rfname == null || rfname.equals("-w")) {
-         rf = Io.createFile(Persist.get(TwidlitMenu.sm_CFG_DIR_PERSIST, m_HomeDir), 
-                            Persist.get(TwidlitMenu.sm_CFG_FILE_PERSIST, ""));
-      } else {
-         rf =  new File(rfname);
-         if (rf.isDirectory()) {
-            rf = Io.createFile(rfname, 
-                               Persist.get(TwidlitMenu.sm_CFG_FILE_PERSIST, ""));
-         }
-      }
-      if (rf.isDirectory()) {
-         rf = Io.createFile(rfname, "twiddler.cfg");
-      }
-      if (!Io.fileExists(rf)) {
-         System.out.printf("Failed to find input file - " + rf.getPath());
-         return;
-      }
-      Cfg cfg = Cfg.read(rf);
-      if (cfg == null) {
-         System.out.printf("Failed to parse input file - " + rf.getPath());
-         return;
-      }
-      if (mirror) {
-         cfg = new Cfg(cfg, cfg.getAssignments().reversed());
-      }
-      if (Cfg.isBinary(rf.getPath())) {
-         if (mrl) {
-            Chord.use4Finger(false);
-         }
-         if (wfname == null) {
-            System.out.println(cfg.toString());
-         } else {
-            Io.write(new File(wfname), cfg.toString());
-         }
-         return;
-      }
-      if (wfname == null) {
-         wfname = "twiddler.cfg";
-      }
-      File wf = new File(wfname);
-      if (wf.isDirectory()) {
-         wf = Io.createFile(wfname, "twiddler.cfg");
-      } else if (!Cfg.isBinary(wfname)) {
-         wf = new File(wfname + ".cfg");
-      }
-      cfg.write(wf, Integer.parseInt(version) - 2);
-      return;
-   }
-
    /////////////////////////////////////////////////////////////////////////////
    private static void init() {
       Log.init(Log.ExitOnError);
@@ -507,6 +457,8 @@ class Twidlit
    private int m_KeyWaitMsec;
    private long m_StartTimeMs;
    private int m_TimeMs;
+   // the last chord timed, 0 if the last was not
+   private int m_PrevChord;
    private long m_KeyStartMs;
    private boolean m_Timed;
    private ChordTimes m_ChordTimes;
@@ -519,11 +471,14 @@ class Twidlit
 
       if (Util.getOptionIndex("-r", argv) != -1) {
          init();
-         translate(Util.getOptionValue("-r", null, argv), 
-                   Util.getOptionValue("-w", null, argv),
-                   Util.getOptionValue("-v", "5", argv),
-                   Util.getOptionIndex("-0", argv) != -1,
-                   Util.getOptionIndex("-m", argv) != -1);
+         // report to the command line
+         Log.setConsole(true);
+         Batch.convertCfg(m_HomeDir,
+                          Util.getOptionValue("-r", null, argv), 
+                          Util.getOptionValue("-w", null, argv),
+                          Util.getOptionValue("-v", "5", argv),
+                          Util.getOptionIndex("-0", argv) != -1,
+                          Util.getOptionIndex("-m", argv) != -1);
          return;
       }
 
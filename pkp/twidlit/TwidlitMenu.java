@@ -84,6 +84,11 @@ class TwidlitMenu extends PersistentMenuBar
       m_CountsMenu.addSeparator();
       add(m_CountsMenu, sm_COUNTS_FILE_TEXT);
       add(m_CountsMenu, sm_COUNTS_FILES_TEXT);
+      add(m_CountsMenu, sm_COUNTS_WATCH_TEXT);
+      m_StopWatchingItem = add(m_CountsMenu, sm_COUNTS_STOP_WATCHING_TEXT);
+      m_StopWatchingItem.setEnabled(false);
+      m_CountsSnapshot = null;
+      m_LiveCountsWindows = new ArrayList<LiveCountsWindow>();
       m_CountsMenu.addSeparator();      
       add(m_CountsMenu, sm_COUNTS_RANGE_TEXT);
       m_CountsTableItem = add(m_CountsMenu, sm_COUNTS_TABLE_TEXT);
@@ -94,7 +99,7 @@ class TwidlitMenu extends PersistentMenuBar
       m_CountsInDir = Persist.get(sm_COUNTS_DIR_PERSIST, m_Twidlit.getHomeDir());
       m_CountsOutDir = Persist.get(sm_COUNTS_TEXT_DIR_PERSIST, m_Twidlit.getHomeDir());
       m_CountsMinimum = 1;
-      m_CountsMaximum = 2000000000;
+      m_CountsMaximum = Long.MAX_VALUE;
       
       JMenu tutorMenu = new JMenu(sm_TUTOR_MENU_TEXT);
       add(tutorMenu);
@@ -122,6 +127,7 @@ class TwidlitMenu extends PersistentMenuBar
       add(tutorMenu, sm_TUTOR_SIDE_CHORD_TIMES_TEXT);
       add(tutorMenu, sm_TUTOR_CROSS_CHORD_TIMES_TEXT);
       add(tutorMenu, sm_TUTOR_BUTTON_TIMES_TEXT);
+      add(tutorMenu, sm_TUTOR_TRANSITION_TIMES_TEXT);
       add(tutorMenu, sm_TUTOR_CLEAR_TIMES_TEXT);
       
       JMenu helpMenu = new JMenu(sm_HELP_MENU_TEXT);
@@ -329,6 +335,12 @@ class TwidlitMenu extends PersistentMenuBar
               + "# " + df.format(Calendar.getInstance().getTime()) + '\n'
               + ct.comparePositions(m_Twidlit.getTwiddlerWindow().isVertical());
       }
+      case sm_TRANSITION_TIMES_TITLE: {
+         ChordTimes ct = m_Twidlit.getChordTimes();
+         SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+         return ct.header("Slowest transitions", df.format(Calendar.getInstance().getTime()))
+              + ct.listSlowestTransitions(sm_TRANSITIONS_LISTED);
+      }
       default:
          Log.err("TwidlitMenu.getContentForTitle() bad title: " + title);
          return "";
@@ -417,6 +429,7 @@ class TwidlitMenu extends PersistentMenuBar
       case sm_TUTOR_SIDE_CHORD_TIMES_TEXT:
       case sm_TUTOR_CROSS_CHORD_TIMES_TEXT:
       case sm_TUTOR_BUTTON_TIMES_TEXT:
+      case sm_TUTOR_TRANSITION_TIMES_TEXT:
          viewSaveText(command);
          return;
       case sm_FILE_SAVE_AS_TEXT:
@@ -465,6 +478,7 @@ class TwidlitMenu extends PersistentMenuBar
          return;
       case sm_COUNTS_FILE_TEXT:
       case sm_COUNTS_FILES_TEXT:
+      case sm_COUNTS_WATCH_TEXT:
          m_FileChooser = makeFileChooser(new CountsFileActionListener(command), m_CountsInDir);
          if (command.equals(sm_COUNTS_FILE_TEXT)) {
             m_FileChooser.setDialogTitle("Select a Text File to Count");
@@ -474,7 +488,9 @@ class TwidlitMenu extends PersistentMenuBar
                m_FileChooser.setFileFilter(m_FileChooser.getAcceptAllFileFilter());
             }
          } else {
-            m_FileChooser.setDialogTitle("Select a Folder of Text Files to Count");
+            m_FileChooser.setDialogTitle(command.equals(sm_COUNTS_WATCH_TEXT)
+                                         ? "Select a Folder of Text Files to Watch"
+                                         : "Select a Folder of Text Files to Count");
             m_FileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
          }
          m_FileChooser.showDialog(m_Twidlit, "OK");
@@ -501,6 +517,9 @@ class TwidlitMenu extends PersistentMenuBar
       case sm_COUNTS_GRAPH_TEXT:
          showCounts(command);
          return;
+      case sm_COUNTS_STOP_WATCHING_TEXT:
+         stopWatching();
+         return;
       case sm_COUNTS_CLEAR_TEXT:
          if (JOptionPane.showConfirmDialog(
                 m_Twidlit,
@@ -508,6 +527,7 @@ class TwidlitMenu extends PersistentMenuBar
                 sm_COUNTS_CLEAR_TEXT, 
                 JOptionPane.YES_NO_OPTION)
               == JOptionPane.YES_OPTION) {
+            stopWatching();
             m_CharCounts = null;
             enableCountsMenuItems(false);
          }
@@ -668,6 +688,11 @@ class TwidlitMenu extends PersistentMenuBar
          scw.setPersistName(sm_COMPARE_CHORDS_PERSIST);
          scw.setExtension("txt");
          break;
+      case sm_TUTOR_TRANSITION_TIMES_TEXT:
+         scw = new SaveChordsWindow(this, sm_TRANSITION_TIMES_TITLE, m_CfgDir);
+         scw.setPersistName(sm_COMPARE_CHORDS_PERSIST);
+         scw.setExtension("transitions." + m_Twidlit.getChordTimes().getExtension());
+         break;
        default:
          Log.err("TwidlitMenu.viewSaveText(): unexpected command " + command);
          return;
@@ -716,10 +741,32 @@ class TwidlitMenu extends PersistentMenuBar
    private void showCounts(String command) {
       if (m_CharCounts == null) {
          Log.warn("No counts to show");
+         return;
+      }
+      Counts snapshot = m_CountsSnapshot;
+      if (m_CharCounts.isWatching() && snapshot != null) {
+         // the counts are changing, show the latest still copy
+         Counts counts = new Counts(snapshot);
+         counts.setBounds(m_CountsMinimum, m_CountsMaximum);
+         (new CharCountShowThread(counts, command, m_CountsOutDir, true)).start();
+         return;
       }
       (new CharCountShowThread(m_CharCounts, 
                                command, 
-                               m_CountsOutDir)).start();
+                               m_CountsOutDir, 
+                               false)).start();
+   }
+
+   ///////////////////////////////////////////////////////////////////
+   private void stopWatching() {
+      if (m_CharCounts != null) {
+         m_CharCounts.stopWatching();
+      }
+      m_CountsSnapshot = null;
+      synchronized (m_LiveCountsWindows) {
+         m_LiveCountsWindows.clear();
+      }
+      m_StopWatchingItem.setEnabled(false);
    }
 
    ///////////////////////////////////////////////////////////////////
@@ -844,6 +891,7 @@ class TwidlitMenu extends PersistentMenuBar
          case sm_TUTOR_SIDE_CHORD_TIMES_TEXT:
          case sm_TUTOR_CROSS_CHORD_TIMES_TEXT:
          case sm_TUTOR_BUTTON_TIMES_TEXT:
+         case sm_TUTOR_TRANSITION_TIMES_TEXT:
             m_Action = action;
          }   
       }
@@ -856,6 +904,7 @@ class TwidlitMenu extends PersistentMenuBar
          case sm_TUTOR_SIDE_CHORD_TIMES_TEXT:
          case sm_TUTOR_CROSS_CHORD_TIMES_TEXT:
          case sm_TUTOR_BUTTON_TIMES_TEXT:
+         case sm_TUTOR_TRANSITION_TIMES_TEXT:
             Log.err(String.format("m_Action == %s", m_Action));
          }
          File f = fc.getSelectedFile();
@@ -927,6 +976,16 @@ class TwidlitMenu extends PersistentMenuBar
                                          m_CountsMaximum);
                m_CharCounts.setShowBigrams(m_CountsBigrams);               
             }
+            if (m_Action.equals(sm_COUNTS_WATCH_TEXT)) {
+               if (!f.isDirectory()) {
+                  Log.warn("\"" + f.getPath() + "\" is a file, Counts expected a folder.");
+                  return;               
+               }
+               m_CountsInDir = f.getPath();
+               m_CharCounts.watch(f, new CountsWatchListener());
+               m_StopWatchingItem.setEnabled(true);
+               return;
+            }
             if (m_Action.equals(sm_COUNTS_FILE_TEXT)) {
                if (f.isDirectory()) {
                   Log.warn("\"" + f.getPath() + "\" is a folder, Counts expected a file.");
@@ -981,10 +1040,7 @@ class TwidlitMenu extends PersistentMenuBar
             List<File> files = Io.listAllFilesInTree(m_File);
             ProgressWindow pw = new ProgressWindow("Count Progress", "", 0, files.size());
             pw.setVisible(true);
-            for (File file : files) {
-               m_Counts.count(file);
-               pw.step();
-            }
+            m_Counts.count(files, pw);
             pw.setVisible(false);
             pw.dispose();
          }
@@ -997,14 +1053,71 @@ class TwidlitMenu extends PersistentMenuBar
       private File m_File;
    }
 
+   ////////////////////////////////////////////////////////////////////////////////
+   // Keeps the counts windows up to date with the folder being watched.
+   class CountsWatchListener implements Counts.Listener {
+
+      /////////////////////////////////////////////////////////////////////////////
+      @Override // Counts.Listener
+      public void countsChanged(Counts snapshot) {
+         m_CountsSnapshot = snapshot;
+         ArrayList<LiveCountsWindow> windows;
+         synchronized (m_LiveCountsWindows) {
+            for (int i = m_LiveCountsWindows.size() - 1; i >= 0; --i) {
+               if (!m_LiveCountsWindows.get(i).m_Window.isDisplayable()) {
+                  m_LiveCountsWindows.remove(i);
+               }
+            }
+            windows = new ArrayList<LiveCountsWindow>(m_LiveCountsWindows);
+         }
+         for (LiveCountsWindow lcw : windows) {
+            final SaveTextWindow stw = lcw.m_Window;
+            Counts counts = new Counts(snapshot);
+            counts.setBounds(m_CountsMinimum, m_CountsMaximum);
+            final String text = lcw.m_ShowWhat.equals(sm_COUNTS_TABLE_TEXT)
+                                ? counts.table(null)
+                                : counts.graph(null);
+            SwingUtilities.invokeLater(new Runnable() {
+               @Override
+               public void run() {
+                  stw.replaceText(text);
+               }
+            });
+         }
+         SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+               enableCountsMenuItems(true);
+            }
+         });
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////////
+   // A counts window to refresh while watching.
+   static class LiveCountsWindow {
+
+      /////////////////////////////////////////////////////////////////////////////
+      LiveCountsWindow(SaveTextWindow stw, String what) {
+         m_Window = stw;
+         m_ShowWhat = what;
+      }
+
+      // Data ////////////////////////////////////////////////////////////////////
+      private final SaveTextWindow m_Window;
+      private final String m_ShowWhat;
+   }
+
    ////////////////////////////////////////////////////////////////////////////////
    class CharCountShowThread extends Thread {
       
       /////////////////////////////////////////////////////////////////////////////
-      CharCountShowThread(Counts counts, String what, String outDir) {
+      // Refreshes the window while watching if live.
+      CharCountShowThread(Counts counts, String what, String outDir, boolean live) {
          m_Counts = new Counts(counts);
          m_ShowWhat = what;
          m_OutDir = outDir;
+         m_Live = live;
       }
 
       /////////////////////////////////////////////////////////////////////////////
@@ -1033,12 +1146,18 @@ class TwidlitMenu extends PersistentMenuBar
          stw.setChoosenFileUser(new CountsChoosenFileUser());
          stw.setVisible(true);
          pw.setVisible(false);
+         if (m_Live) {
+            synchronized (m_LiveCountsWindows) {
+               m_LiveCountsWindows.add(new LiveCountsWindow(stw, m_ShowWhat));
+            }
+         }
       }
 
       // Data ////////////////////////////////////////////////////////////////////
       private Counts m_Counts;
       private String m_ShowWhat;
       private String m_OutDir;
+      private boolean m_Live;
    }
    
    // Final //////////////////////////////////////////////////////////
@@ -1058,6 +1177,8 @@ class TwidlitMenu extends PersistentMenuBar
    private static final String sm_COUNTS_NGRAMS_FILE_TEXT = "Ngrams File...";
    private static final String sm_COUNTS_FILE_TEXT = "Count File...";
    private static final String sm_COUNTS_FILES_TEXT = "Count Files...";
+   private static final String sm_COUNTS_WATCH_TEXT = "Watch Files...";
+   private static final String sm_COUNTS_STOP_WATCHING_TEXT = "Stop Watching";
    private static final String sm_COUNTS_BIGRAMS_TEXT = "Include Bigrams";
    private static final String sm_COUNTS_NGRAMS_TEXT = "Include Ngrams";
    private static final String sm_COUNTS_NGRAM_FILE_TEXT = "NGrams File...";
@@ -1078,6 +1199,7 @@ class TwidlitMenu extends PersistentMenuBar
    private static final String sm_TUTOR_SIDE_CHORD_TIMES_TEXT = "Compare Side Chords";
    private static final String sm_TUTOR_CROSS_CHORD_TIMES_TEXT = "Compare Cross Chords";
    private static final String sm_TUTOR_BUTTON_TIMES_TEXT = "Compare Button Times";
+   private static final String sm_TUTOR_TRANSITION_TIMES_TEXT = "List Slowest Transitions";
    private static final String sm_TUTOR_CLEAR_TIMES_TEXT = "Clear Times";
    static final String sm_HELP_MENU_TEXT = "Help";
    private static final String sm_HELP_INTRO_TEXT = "Introduction";
@@ -1093,6 +1215,8 @@ class TwidlitMenu extends PersistentMenuBar
    private static final String sm_SIDE_CHORD_TIMES_TITLE = "Compare Side Chord Times";
    private static final String sm_CROSS_CHORD_TIMES_TITLE = "Compare Cross Chord Times";
    private static final String sm_BUTTON_TIMES_TITLE = "Compare Button Times";
+   private static final String sm_TRANSITION_TIMES_TITLE = "Slowest Transitions";
+   private static final int sm_TRANSITIONS_LISTED = 100;
 
    static final String sm_LOG_FILE_NAME = "twidlit.log";
 
@@ -1134,16 +1258,20 @@ class TwidlitMenu extends PersistentMenuBar
    private JMenuItem m_CountsTableItem;
    private JMenuItem m_CountsGraphItem;
    private JMenuItem m_ClearCountsItem;
+   private JMenuItem m_StopWatchingItem;
    private JMenuItem m_DelayItem;
    private JMenuItem m_SpeedItem;
    private JCheckBoxMenuItem m_TutorTimedItem;
    private JCheckBoxMenuItem m_TutorAutoScaleItem;
    private Counts m_CharCounts;
+   // the latest counts of the folder watched
+   private volatile Counts m_CountsSnapshot;
+   private List<LiveCountsWindow> m_LiveCountsWindows;
    private boolean m_CountsAllFiles;
    private String m_CountsInDir;
    private String m_CountsOutDir;
-   private int m_CountsMinimum; 
-   private int m_CountsMaximum; 
+   private long m_CountsMinimum; 
+   private long m_CountsMaximum; 
    private boolean m_CountsBigrams; 
    private JCheckBoxMenuItem m_CountsNGrams; 
    private File m_NGramsFile;
@@ -17,14 +17,14 @@ public class IntegerTextField extends JFormattedTextField {
 
    ///////////////////////////////////////////////////////////////////
    public IntegerTextField(int value, int min, int max) {
-      super(createFormatter(min, max));
-      setPreferredSize(new Dimension(90, (int)getPreferredSize().getHeight()));
-      setMinimumSize(getPreferredSize());
-      setMaximumSize(getPreferredSize());
-      setOpaque(false);
-      setValue(new Integer(value));
-      setHorizontalAlignment(JTextField.RIGHT);
-      setFocusLostBehavior(JFormattedTextField.COMMIT_OR_REVERT);
+      super(createFormatter(Integer.class, min, max));
+      init(new Integer(value));
+   }
+   
+   ///////////////////////////////////////////////////////////////////
+   public IntegerTextField(long value, long min, long max) {
+      super(createFormatter(Long.class, min, max));
+      init(Long.valueOf(value));
    }
    
    ///////////////////////////////////////////////////////////////////
@@ -40,9 +40,20 @@ public class IntegerTextField extends JFormattedTextField {
    // Private /////////////////////////////////////////////////////////////////
 
    ///////////////////////////////////////////////////////////////////
-   private static NumberFormatter createFormatter(int min, int max) {
+   private void init(Number value) {
+      setPreferredSize(new Dimension(90, (int)getPreferredSize().getHeight()));
+      setMinimumSize(getPreferredSize());
+      setMaximumSize(getPreferredSize());
+      setOpaque(false);
+      setValue(value);
+      setHorizontalAlignment(JTextField.RIGHT);
+      setFocusLostBehavior(JFormattedTextField.COMMIT_OR_REVERT);
+   }
+   
+   ///////////////////////////////////////////////////////////////////
+   private static NumberFormatter createFormatter(Class<?> valueClass, Comparable<?> min, Comparable<?> max) {
       NumberFormatter nf = new NumberFormatter(NumberFormat.getInstance());
-      nf.setValueClass(Integer.class);
+      nf.setValueClass(valueClass);
       nf.setMinimum(min);
       nf.setMaximum(max);
       return nf;
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * IndexSort.java
+ */
+package pkp.util;
+
+///////////////////////////////////////////////////////////////////////////////
+// Sorts the indexes of an array of keys rather than the keys, so parallel
+// arrays and lists can be put in order with one pass each. The sort is a
+// merge sort, so equal keys keep their order.
+public class IndexSort {
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Returns the indexes of keys in key order.
+   public static int[] sort(long[] keys, boolean ascending) {
+      int[] index = new int[keys.length];
+      for (int i = 0; i < index.length; ++i) {
+         index[i] = i;
+      }
+      if (index.length > 1) {
+         mergeSort(keys, ascending, index.clone(), index, 0, index.length);
+      }
+      return index;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public static int[] sort(int[] keys, boolean ascending) {
+      long[] lk = new long[keys.length];
+      for (int i = 0; i < keys.length; ++i) {
+         lk[i] = keys[i];
+      }
+      return sort(lk, ascending);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Returns values in index order.
+   public static int[] permute(int[] values, int[] index) {
+      int[] sorted = new int[index.length];
+      for (int i = 0; i < index.length; ++i) {
+         sorted[i] = values[index[i]];
+      }
+      return sorted;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public static <T> T[] permute(T[] values, int[] index) {
+      T[] sorted = values.clone();
+      for (int i = 0; i < index.length; ++i) {
+         sorted[i] = values[index[i]];
+      }
+      return sorted;
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Sorts src[start, end) into dst[start, end). src and dst start equal.
+   private static void mergeSort(long[] keys, boolean ascending, int[] src, int[] dst, int start, int end) {
+      if (end - start <= sm_INSERTION_SIZE) {
+         for (int i = start + 1; i < end; ++i) {
+            int ix = dst[i];
+            int j = i;
+            for (; j > start && isBefore(keys, ascending, ix, dst[j - 1]); --j) {
+               dst[j] = dst[j - 1];
+            }
+            dst[j] = ix;
+         }
+         return;
+      }
+      int mid = (start + end) >>> 1;
+      // sort each half of dst into src
+      mergeSort(keys, ascending, dst, src, start, mid);
+      mergeSort(keys, ascending, dst, src, mid, end);
+      // and merge them back, taking the left on equal keys
+      int l = start;
+      int r = mid;
+      for (int i = start; i < end; ++i) {
+         if (r >= end || (l < mid && !isBefore(keys, ascending, src[r], src[l]))) {
+            dst[i] = src[l++];
+         } else {
+            dst[i] = src[r++];
+         }
+      }
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static boolean isBefore(long[] keys, boolean ascending, int lhs, int rhs) {
+      return ascending ? keys[lhs] < keys[rhs] : keys[lhs] > keys[rhs];
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_INSERTION_SIZE = 8;
+}
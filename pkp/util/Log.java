@@ -40,6 +40,12 @@ public class Log implements ActionListener {
       sm_Window = w;
    }
 
+   ////////////////////////////////////////////////////////////////////////////
+   // Warnings and errors go to stderr rather than dialogs.
+   public static void setConsole(boolean console) {
+      sm_Console = console;
+   }
+
    ////////////////////////////////////////////////////////////////////////////
    public static void init(File f, boolean exitOnError) {
       sm_ExitOnError = exitOnError;
@@ -96,13 +102,17 @@ public class Log implements ActionListener {
 
    ////////////////////////////////////////////////////////////////////////////
    public static void warn(String msg) {
-      JOptionPane.showMessageDialog(sm_Window, msg, "Warning", JOptionPane.WARNING_MESSAGE);
+      if (!sm_Console) {
+         JOptionPane.showMessageDialog(sm_Window, msg, "Warning", JOptionPane.WARNING_MESSAGE);
+      }
       sm_Log.log1(Level.WARN, msg);
    }
 
    ////////////////////////////////////////////////////////////////////////////
    public static void err(String msg) {
-      JOptionPane.showMessageDialog(sm_Window, msg, "Error", JOptionPane.ERROR_MESSAGE);
+      if (!sm_Console) {
+         JOptionPane.showMessageDialog(sm_Window, msg, "Error", JOptionPane.ERROR_MESSAGE);
+      }
 		if (sm_Log != null) {
 			sm_Log.log1(Level.ERROR, msg);
 		}
@@ -254,7 +264,7 @@ public class Log implements ActionListener {
    protected void log1(Level level, String text) {
       String msg = sm_TIME_FORMAT.format(new Date()) + level.m_Name + text;
       write(msg);
-      if (level == Level.ERROR) {
+      if (level == Level.ERROR || sm_Console && level == Level.WARN) {
          System.err.println(msg);      
       }
       if (m_TextWindow != null) {
@@ -361,6 +371,7 @@ public class Log implements ActionListener {
    private static Window sm_Window = null;
    private static Log sm_Log = null;
    private static boolean sm_ExitOnError = true;
+   private static boolean sm_Console = false;
    private File m_File;
    private BufferedWriter m_Out;
    private TextWindow m_TextWindow;
@@ -5,6 +5,7 @@
  */
 package pkp.util;
 
+import java.util.ArrayList;
 import java.util.List;
 
 ///////////////////////////////////////////////////////////////////////////////
@@ -67,53 +68,27 @@ public class Util {
    ////////////////////////////////////////////////////////////////////////////
    // Sort a list of integers and a parallel list.
    public static <T> void sortAscending(List<Integer> li, List<T> lt) {
-      sort(li, lt, ArithmeticComparison.GREATER);
+      sort(li, lt, true);
    }
 
    ////////////////////////////////////////////////////////////////////////////
    // Sort a list of integers and a parallel list.
    public static <T> void sortDescending(List<Integer> li, List<T> lt) {
-      sort(li, lt, ArithmeticComparison.LESS);
+      sort(li, lt, false);
    }
 
    ////////////////////////////////////////////////////////////////////////////
-   public enum ArithmeticComparison {
-      EQUAL() {
-         @Override boolean apply(int lhs, int rhs) { return lhs == rhs; }
-      },
-      NOT_EQUAL() {
-         @Override boolean apply(int lhs, int rhs) { return lhs != rhs; }
-      },
-      GREATER_OR_EQUAL() {
-         @Override boolean apply(int lhs, int rhs) { return lhs >= rhs; }
-      },
-      LESS_OR_EQUAL() {
-         @Override boolean apply(int lhs, int rhs) { return lhs <= rhs; }
-      },
-      GREATER() {
-         @Override boolean apply(int lhs, int rhs) { return lhs > rhs; }
-      },
-      LESS() {
-         @Override boolean apply(int lhs, int rhs) { return lhs < rhs; }
-      };
-      abstract boolean apply(int lhs, int rhs);
-   }
-
-   ////////////////////////////////////////////////////////////////////////////
-   // Sort a list of integers and a parallel list.
-   public static <T> void sort(List<Integer> li, List<T> lt, ArithmeticComparison cmp) {
-      for (int i = 0; i < li.size(); ++i) {
-         int v = li.get(i);
-         for (int k = i + 1; k < li.size(); ++k) {
-            if (cmp.apply(v, li.get(k))) {
-               li.set(i, li.get(k));
-               li.set(k, v);
-               v = li.get(i);
-               T t = lt.get(i);
-               lt.set(i, lt.get(k));
-               lt.set(k, t);
-            }
-         }
+   // Equal integers keep their order.
+   private static <T> void sort(List<Integer> li, List<T> lt, boolean ascending) {
+      long[] keys = new long[li.size()];
+      for (int i = 0; i < keys.length; ++i) {
+         keys[i] = li.get(i);
+      }
+      int[] index = IndexSort.sort(keys, ascending);
+      List<T> copy = new ArrayList<T>(lt);
+      for (int i = 0; i < index.length; ++i) {
+         li.set(i, (int)keys[index[i]]);
+         lt.set(i, copy.get(index[i]));
       }
    }
 }
@@ -42,6 +42,40 @@ public class ChordGroup {
       return str;
    }
 
+   /////////////////////////////////////////////////////////////////////////////
+   public static int stringToMask(String txt) {
+      int value = 0;
+      for (int finger = 0; finger < 4; ++finger) {
+         value <<= sm_MaskShift;
+         final int f = charToMask(txt.charAt(finger));
+         if (f == -1) {
+            Log.warn("Bad character '" + txt.charAt(finger) + "' in mask \"" + txt + '"'); 
+            return 0;
+         }
+         value += f;
+      }
+      return value;
+   }
+
+   /////////////////////////////////////////////////////////////////////////////
+   public static int charToMask(char c) {
+      switch (c) {
+      case '.': return 0;
+      case 'a': case 'A': return 0xA;
+      case 'b': case 'B': return 0xB;
+      case 'c': case 'C': return 0xC;
+      case 'd': case 'D': return 0xD;
+      case 'e': case 'E': return 0xE;
+      case 'f': case 'F': case '?': return 0xF;
+      }
+      // 0 == no buttons (1) in 0MRL
+      final int v = (int)(c - '0');
+      if (1 <= v && v <= 9) {
+         return v;
+      }
+      return sm_Maskable[Chord.Position.fromChar(c).toInt()];
+   }
+
    /////////////////////////////////////////////////////////////////////////////
    public ChordGroup(ChordText chordText, boolean free, boolean showText, int mask) {
       m_ChordText = chordText;
@@ -26,8 +26,6 @@ import javax.swing.JFormattedTextField.AbstractFormatter;
 import javax.swing.text.MaskFormatter;
 import javax.swing.JTextField;
 import javax.swing.JOptionPane;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.ArrayList;
 import java.io.File;
 import pkp.twiddle.Chord;
@@ -36,7 +34,6 @@ import pkp.ui.FileBox;
 import pkp.ui.LabelComponentBox;
 import pkp.ui.HtmlWindow;
 import pkp.io.Io;
-import pkp.io.LineReader;
 import pkp.util.Persist;
 import pkp.util.Log;
 
@@ -49,40 +46,6 @@ public class ChordGrouper extends ControlDialog
       return "0123456789abcdefrmlABCDEF|-,'?";
    }
 
-   /////////////////////////////////////////////////////////////////////////////
-   public static int stringToMask(String txt) {
-      int value = 0;
-      for (int finger = 0; finger < 4; ++finger) {
-         value <<= ChordGroup.sm_MaskShift;
-         final int f = charToMask(txt.charAt(finger));
-         if (f == -1) {
-            Log.warn("Bad character '" + txt.charAt(finger) + "' in mask \"" + txt + '"'); 
-            return 0;
-         }
-         value += f;
-      }
-      return value;
-   }
-
-   /////////////////////////////////////////////////////////////////////////////
-   public static int charToMask(char c) {
-      switch (c) {
-      case '.': return 0;
-      case 'a': case 'A': return 0xA;
-      case 'b': case 'B': return 0xB;
-      case 'c': case 'C': return 0xC;
-      case 'd': case 'D': return 0xD;
-      case 'e': case 'E': return 0xE;
-      case 'f': case 'F': case '?': return 0xF;
-      }
-      // 0 == no buttons (1) in 0MRL
-      final int v = (int)(c - '0');
-      if (1 <= v && v <= 9) {
-         return v;
-      }
-      return ChordGroup.sm_Maskable[Chord.Position.fromChar(c).toInt()];
-   }
-
    /////////////////////////////////////////////////////////////////////////////
    public ChordGrouper(Window owner, File mapFile) {
       super(owner, "Group Chords");
@@ -207,46 +170,14 @@ public class ChordGrouper extends ControlDialog
    /////////////////////////////////////////////////////////////////////////////
    @Override // ContentForTitle
    public String getContentForTitle(String title) {
-      SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-      String head = "";
-      head += "# Twidlit Chord Grouping at " + df.format(Calendar.getInstance().getTime()) + '\n';
-
-      ChordText chordText = new 
-         ChordText(m_ChordsFileBox.getFile() != null
-                 ? new LineReader(Io.toUrl(m_ChordsFileBox.getFile()))
-                 : null);
-
-      if (m_ChordsFileBox.getFile() == null) {
-         head += "# All chords (255)\n";
-      } else {
-         head += "# " + m_ChordsFileBox.getFile().getPath() + '\n';
-         head += "# " + (m_GroupFree.isSelected() ? "Free" : "Used") + " chords ("
-              + String.valueOf((new ChordGroup(chordText, m_GroupFree.isSelected(), false, 0)).eligibleCount())
-              + "/255)\n";
-      }
-      head += "# " + "Finger priority " + m_Priority.getText() + '\n';
-      
-      if (m_GroupByMask.isSelected()) {
-         ChordGroup group = new
-            ChordGroup(chordText,
-                       m_GroupFree.isSelected(),
-                       m_ShowText.isSelected(),
-                       stringToMask(m_GroupText.getText()));
-         return head + '\n' + group.toString(m_Priority.getText());
-      } else {
-         head += "# Generated from " + m_FixedText.getText() + ' ' + m_AcceptText.getText() + '\n';
-         if (m_MinGroup.getNumber().intValue() > 1) {
-            head += "# Minimum group size " + m_MinGroup.getNumber().intValue() + '\n';
-         }
-         ChordGroups groups = new
-            ChordGroups(chordText,
-                        m_GroupFree.isSelected(),
-                        m_ShowText.isSelected(),
-                        stringToMask(m_FixedText.getText()),
-                        stringToMask(m_AcceptText.getText()),
-                        m_Priority.getText());
-         return head + '\n' + groups.toString(m_MinGroup.getNumber().intValue());
-      }
+      return ChordGroups.report(m_ChordsFileBox.getFile(),
+                                m_GroupFree.isSelected(),
+                                m_ShowText.isSelected(),
+                                m_Priority.getText(),
+                                m_GroupByMask.isSelected() ? m_GroupText.getText() : null,
+                                m_FixedText.getText(),
+                                m_AcceptText.getText(),
+                                m_MinGroup.getNumber().intValue());
    }
 
    // Private /////////////////////////////////////////////////////////////////
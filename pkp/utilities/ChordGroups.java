@@ -6,8 +6,13 @@
 
 package pkp.utilities;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import pkp.twiddle.Chord;
+import pkp.io.Io;
+import pkp.io.LineReader;
 
 ////////////////////////////////////////////////////////////////////////////////
 public class ChordGroups {
@@ -28,6 +33,48 @@ public class ChordGroups {
       }
    }
 
+   /////////////////////////////////////////////////////////////////////////////
+   // The chords of chordsF (all if null) in groups, with a header. Grouped by
+   // mask, or if that is null, by the masks generated from fixed and accept.
+   public static String report(File chordsF, boolean free, boolean showText, String priority,
+                               String mask, String fixed, String accept, int min) {
+      SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+      String head = "";
+      head += "# Twidlit Chord Grouping at " + df.format(Calendar.getInstance().getTime()) + '\n';
+
+      ChordText chordText = new 
+         ChordText(chordsF != null
+                 ? new LineReader(Io.toUrl(chordsF))
+                 : null);
+
+      if (chordsF == null) {
+         head += "# All chords (255)\n";
+      } else {
+         head += "# " + chordsF.getPath() + '\n';
+         head += "# " + (free ? "Free" : "Used") + " chords ("
+              + String.valueOf((new ChordGroup(chordText, free, false, 0)).eligibleCount())
+              + "/255)\n";
+      }
+      head += "# " + "Finger priority " + priority + '\n';
+      
+      if (mask != null) {
+         ChordGroup group = new
+            ChordGroup(chordText, free, showText, ChordGroup.stringToMask(mask));
+         return head + '\n' + group.toString(priority);
+      } else {
+         head += "# Generated from " + fixed + ' ' + accept + '\n';
+         if (min > 1) {
+            head += "# Minimum group size " + min + '\n';
+         }
+         ChordGroups groups = new
+            ChordGroups(chordText, free, showText,
+                        ChordGroup.stringToMask(fixed),
+                        ChordGroup.stringToMask(accept),
+                        priority);
+         return head + '\n' + groups.toString(min);
+      }
+   }
+
    /////////////////////////////////////////////////////////////////////////////
    public ArrayList<ChordGroup> getGroups() {
       return m_Groups;
@@ -0,0 +1,418 @@
+/**
+ * Copyright 2017 Pushkar Piggott
+ *
+ * ChordOptimizer.java
+ */
+
+package pkp.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Calendar;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.text.SimpleDateFormat;
+import pkp.chars.Counts;
+import pkp.twiddle.Assignment;
+import pkp.twiddle.Assignments;
+import pkp.twiddle.Chord;
+import pkp.twiddle.KeyMap;
+import pkp.twiddle.KeyPress;
+import pkp.twiddle.KeyPressList;
+import pkp.twiddle.Twiddle;
+import pkp.util.IndexSort;
+
+////////////////////////////////////////////////////////////////////////////////
+// Assigns the chars of a corpus to chords to minimize the time to chord it,
+// counting each char at its chord's mean time and each pair of chars at a
+// penalty for each finger that has to move to another button between them.
+// Starts from the fastest chord for the most frequent char, as ChordMapper
+// does, or from an existing map, and improves that by simulated annealing
+// with a number of independent chains run in parallel, keeping the best.
+// Each move swaps the chords of two chars, or moves a char to a free
+// chord, and only the costs of the chars moved are recalculated.
+public class ChordOptimizer {
+
+   ////////////////////////////////////////////////////////////////////////////
+   // chordMs holds the time for each chord value (0 is not used) and
+   // counts needs bigrams.
+   public ChordOptimizer(int[] chordMs, Counts counts, int fingerMovePenaltyMs) {
+      m_ChordMs = chordMs;
+      m_Penalty = fingerMovePenaltyMs;
+      m_Iterations = 1000000;
+      m_Chains = ForkJoinPool.commonPool().getParallelism();
+      m_Seed = 0;
+      m_Transition = new int[sm_CHORDS * sm_CHORDS];
+      for (int c1 = 1; c1 < sm_CHORDS; ++c1) {
+         for (int c2 = 1; c2 < sm_CHORDS; ++c2) {
+            m_Transition[c1 * sm_CHORDS + c2] = countFingerMoves(c1, c2) * m_Penalty;
+         }
+      }
+      // the chars that can be typed, most frequent first
+      KeyPress[] keys = new KeyPress[sm_CHARS];
+      long[] freq = new long[sm_CHARS];
+      StringBuilder err = new StringBuilder();
+      for (char c = 0; c < sm_CHARS; ++c) {
+         KeyPressList kpl = KeyPressList.parseText(String.valueOf(c), err);
+         if (kpl.size() == 1) {
+            keys[c] = kpl.get(0);
+            freq[c] = counts.getCount(c);
+         }
+      }
+      List<Character> chars = new ArrayList<Character>();
+      for (int c : IndexSort.sort(freq, false)) {
+         if (freq[c] == 0 || chars.size() == Chord.sm_VALUES) {
+            break;
+         }
+         chars.add((char)c);
+      }
+      m_Size = chars.size();
+      m_Chars = new char[m_Size];
+      m_Keys = new KeyPress[m_Size];
+      m_Freq = new long[m_Size];
+      for (int k = 0; k < m_Size; ++k) {
+         m_Chars[k] = chars.get(k);
+         m_Keys[k] = keys[m_Chars[k]];
+         m_Freq[k] = freq[m_Chars[k]];
+      }
+      // the pairs of chars each char is in
+      m_Out = new int[m_Size][];
+      m_OutCount = new long[m_Size][];
+      m_In = new int[m_Size][];
+      m_InCount = new long[m_Size][];
+      for (int k = 0; k < m_Size; ++k) {
+         List<Integer> out = new ArrayList<Integer>();
+         List<Integer> in = new ArrayList<Integer>();
+         for (int n = 0; n < m_Size; ++n) {
+            if (counts.getBigramCount(m_Chars[k], m_Chars[n]) > 0) {
+               out.add(n);
+            }
+            // the char itself is only an out pair
+            if (n != k && counts.getBigramCount(m_Chars[n], m_Chars[k]) > 0) {
+               in.add(n);
+            }
+         }
+         m_Out[k] = toArray(out);
+         m_OutCount[k] = new long[m_Out[k].length];
+         for (int i = 0; i < m_Out[k].length; ++i) {
+            m_OutCount[k][i] = counts.getBigramCount(m_Chars[k], m_Chars[m_Out[k][i]]);
+         }
+         m_In[k] = toArray(in);
+         m_InCount[k] = new long[m_In[k].length];
+         for (int i = 0; i < m_In[k].length; ++i) {
+            m_InCount[k][i] = counts.getBigramCount(m_Chars[m_In[k][i]], m_Chars[k]);
+         }
+      }
+      m_Start = zip();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   public void setIterations(int iterations) { m_Iterations = Math.max(1, iterations); }
+   public void setChains(int chains) { m_Chains = Math.max(1, chains); }
+   public void setSeed(long seed) { m_Seed = seed; }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Starts from the chords that km maps the chars to, where they are
+   // single unthumbed chords, and the fastest free chords for the rest.
+   public void setStart(KeyMap km) {
+      int[] chordOf = new int[m_Size];
+      boolean[] used = new boolean[sm_CHORDS];
+      for (int k = 0; k < m_Size; ++k) {
+         KeyPressList kpl = new KeyPressList(m_Keys[k]);
+         Assignment asg = kpl.findLongestPrefix(km, 0);
+         if (asg != null && asg.getKeyPressList().size() == 1) {
+            Twiddle tw = asg.getBestTwiddle();
+            int chord = tw.getChord().toInt();
+            if (tw.getThumbKeys().isEmpty() && tw.getChord().isChord() && !used[chord]) {
+               chordOf[k] = chord;
+               used[chord] = true;
+            }
+         }
+      }
+      int[] fastest = getFastestChords();
+      int next = 0;
+      for (int k = 0; k < m_Size; ++k) {
+         if (chordOf[k] == 0) {
+            while (used[fastest[next]]) {
+               ++next;
+            }
+            chordOf[k] = fastest[next];
+            used[fastest[next]] = true;
+         }
+      }
+      m_Start = chordOf;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Runs the chains and keeps the best result.
+   public void optimize() {
+      m_StartCost = new Chain(this, m_Start, m_Seed).getCost();
+      List<RunChain> chains = new ArrayList<RunChain>();
+      for (int i = 0; i < m_Chains; ++i) {
+         chains.add(new RunChain(this, m_Seed + i));
+      }
+      for (RunChain rc : chains) {
+         rc.fork();
+      }
+      Chain best = null;
+      for (RunChain rc : chains) {
+         Chain c = rc.join();
+         if (best == null || c.getCost() < best.getCost()) {
+            best = c;
+         }
+      }
+      m_Best = best.getChords();
+      m_BestCost = best.getCost();
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The best map found as a cfg.chords file.
+   public String getMap() {
+      int[] chordOf = m_Best == null ? m_Start : m_Best;
+      Assignments asgs = new Assignments();
+      for (int k = 0; k < m_Size; ++k) {
+         asgs.add(new Assignment(new Twiddle(Chord.fromChordValue(chordOf[k])),
+                                 new KeyPressList(m_Keys[k])));
+      }
+      SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+      String str = "# Twidlit Optimized Mapping at " + df.format(Calendar.getInstance().getTime()) + '\n'
+                 + String.format("# %d chars, %d chains of %d iterations%n", m_Size, m_Chains, m_Iterations)
+                 + String.format("# Cost   %.1f sec, from %.1f%n", m_BestCost / 1000.0, m_StartCost / 1000.0);
+      return str + asgs.toString(!Assignment.sm_SHOW_THUMB_KEYS, KeyPress.Format.FILE, false, null);
+   }
+
+   // Private /////////////////////////////////////////////////////////////////
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The fastest chord for the most frequent char and so on.
+   private int[] zip() {
+      int[] fastest = getFastestChords();
+      return Arrays.copyOf(fastest, m_Size);
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private int[] getFastestChords() {
+      int[] times = new int[Chord.sm_VALUES];
+      for (int c = 1; c < sm_CHORDS; ++c) {
+         times[c - 1] = m_ChordMs[c];
+      }
+      int[] fastest = IndexSort.sort(times, true);
+      for (int i = 0; i < fastest.length; ++i) {
+         ++fastest[i];
+      }
+      return fastest;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // The number of fingers on a button in both chords, but not the same one.
+   private static int countFingerMoves(int c1, int c2) {
+      int moves = 0;
+      for (int f = 0; f < Chord.Finger.count(); ++f) {
+         // 2 bits per finger, 0 for none
+         int p1 = (c1 >> f * 2) & 3;
+         int p2 = (c2 >> f * 2) & 3;
+         if (p1 != 0 && p2 != 0 && p1 != p2) {
+            ++moves;
+         }
+      }
+      return moves;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   private static int[] toArray(List<Integer> list) {
+      int[] a = new int[list.size()];
+      for (int i = 0; i < a.length; ++i) {
+         a[i] = list.get(i);
+      }
+      return a;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // One annealing run from the start.
+   private static class Chain {
+
+      /////////////////////////////////////////////////////////////////////////
+      Chain(ChordOptimizer opt, int[] start, long seed) {
+         m_Opt = opt;
+         m_ChordOf = start.clone();
+         m_KeyOf = new int[sm_CHORDS];
+         Arrays.fill(m_KeyOf, -1);
+         for (int k = 0; k < m_ChordOf.length; ++k) {
+            m_KeyOf[m_ChordOf[k]] = k;
+         }
+         m_Random = new Random(seed);
+         m_Cost = 0;
+         for (int k = 0; k < m_ChordOf.length; ++k) {
+            m_Cost += opt.m_Freq[k] * opt.m_ChordMs[m_ChordOf[k]];
+            for (int i = 0; i < opt.m_Out[k].length; ++i) {
+               m_Cost += opt.m_OutCount[k][i] * transition(k, opt.m_Out[k][i]);
+            }
+         }
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      long getCost() { return m_Cost; }
+      int[] getChords() { return m_ChordOf; }
+
+      /////////////////////////////////////////////////////////////////////////
+      void anneal(int iterations) {
+         int size = m_ChordOf.length;
+         if (size == 0) {
+            return;
+         }
+         int[] best = m_ChordOf.clone();
+         long bestCost = m_Cost;
+         // start hot enough to accept a typical worsening move often
+         double temperature = sampleDelta(size);
+         double cooling = Math.pow(sm_FINAL_TEMPERATURE, 1.0 / iterations);
+         for (int i = 0; i < iterations; ++i, temperature *= cooling) {
+            int a = m_Random.nextInt(size);
+            int chord = 1 + m_Random.nextInt(Chord.sm_VALUES);
+            if (chord == m_ChordOf[a]) {
+               continue;
+            }
+            long delta = move(a, chord);
+            if (delta <= 0 || m_Random.nextDouble() < Math.exp(-delta / temperature)) {
+               m_Cost += delta;
+               if (m_Cost < bestCost) {
+                  bestCost = m_Cost;
+                  System.arraycopy(m_ChordOf, 0, best, 0, size);
+               }
+            } else {
+               // undo
+               move(a, m_OldChord);
+            }
+         }
+         m_ChordOf = best;
+         m_Cost = bestCost;
+      }
+
+      // Private //////////////////////////////////////////////////////////////
+
+      /////////////////////////////////////////////////////////////////////////
+      // Puts key a on chord, swapping with the key there if any, and returns
+      // the change in cost.
+      private long move(int a, int chord) {
+         int b = m_KeyOf[chord];
+         long before = localCost(a, b);
+         m_OldChord = m_ChordOf[a];
+         m_KeyOf[m_OldChord] = b;
+         if (b >= 0) {
+            m_ChordOf[b] = m_OldChord;
+         }
+         m_ChordOf[a] = chord;
+         m_KeyOf[chord] = a;
+         return localCost(a, b) - before;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // The costs that depend on where a and b (if not -1) are, each once.
+      private long localCost(int a, int b) {
+         ChordOptimizer o = m_Opt;
+         long cost = o.m_Freq[a] * o.m_ChordMs[m_ChordOf[a]];
+         for (int i = 0; i < o.m_Out[a].length; ++i) {
+            cost += o.m_OutCount[a][i] * transition(a, o.m_Out[a][i]);
+         }
+         for (int i = 0; i < o.m_In[a].length; ++i) {
+            cost += o.m_InCount[a][i] * transition(o.m_In[a][i], a);
+         }
+         if (b >= 0) {
+            cost += o.m_Freq[b] * o.m_ChordMs[m_ChordOf[b]];
+            for (int i = 0; i < o.m_Out[b].length; ++i) {
+               if (o.m_Out[b][i] != a) {
+                  cost += o.m_OutCount[b][i] * transition(b, o.m_Out[b][i]);
+               }
+            }
+            for (int i = 0; i < o.m_In[b].length; ++i) {
+               if (o.m_In[b][i] != a) {
+                  cost += o.m_InCount[b][i] * transition(o.m_In[b][i], b);
+               }
+            }
+         }
+         return cost;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      private int transition(int from, int to) {
+         return m_Opt.m_Transition[m_ChordOf[from] * sm_CHORDS + m_ChordOf[to]];
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // The mean size of the change of some random moves, at least 1.
+      private double sampleDelta(int size) {
+         double sum = 0.0;
+         for (int i = 0; i < sm_SAMPLES; ++i) {
+            int a = m_Random.nextInt(size);
+            int chord = 1 + m_Random.nextInt(Chord.sm_VALUES);
+            if (chord != m_ChordOf[a]) {
+               sum += Math.abs(move(a, chord));
+               move(a, m_OldChord);
+            }
+         }
+         return Math.max(1.0, sum / sm_SAMPLES);
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private static final int sm_SAMPLES = 100;
+      private static final double sm_FINAL_TEMPERATURE = 1e-4;
+      private final ChordOptimizer m_Opt;
+      // key to chord
+      private int[] m_ChordOf;
+      // chord to key or -1
+      private final int[] m_KeyOf;
+      private final Random m_Random;
+      private long m_Cost;
+      // the chord the last key moved was on
+      private int m_OldChord;
+   }
+
+   ////////////////////////////////////////////////////////////////////////////
+   @SuppressWarnings("serial") // never serialized
+   private static class RunChain extends RecursiveTask<Chain> {
+
+      /////////////////////////////////////////////////////////////////////////
+      RunChain(ChordOptimizer opt, long seed) {
+         m_Opt = opt;
+         m_Seed = seed;
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      @Override
+      protected Chain compute() {
+         Chain c = new Chain(m_Opt, m_Opt.m_Start, m_Seed);
+         c.anneal(m_Opt.m_Iterations);
+         return c;
+      }
+
+      // Data /////////////////////////////////////////////////////////////////
+      private final ChordOptimizer m_Opt;
+      private final long m_Seed;
+   }
+
+   // Data ////////////////////////////////////////////////////////////////////
+   private static final int sm_CHORDS = Chord.sm_VALUES + 1;
+   private static final int sm_CHARS = 128;
+   private final int[] m_ChordMs;
+   private final int m_Penalty;
+   // chord * sm_CHORDS + chord to penalty
+   private final int[] m_Transition;
+   // the keys to assign, most frequent first
+   private final int m_Size;
+   private final char[] m_Chars;
+   private final KeyPress[] m_Keys;
+   private final long[] m_Freq;
+   // for each key the keys that follow it and how often, and those before
+   private final int[][] m_Out;
+   private final long[][] m_OutCount;
+   private final int[][] m_In;
+   private final long[][] m_InCount;
+   private int m_Iterations;
+   private int m_Chains;
+   private long m_Seed;
+   private int[] m_Start;
+   private long m_StartCost;
+   private int[] m_Best;
+   private long m_BestCost;
+}
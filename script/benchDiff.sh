@@ -0,0 +1,28 @@
+# Compare two benchmark results written by "ant bench".
+# usage: script/benchDiff.sh bench-results/<before>.csv bench-results/<after>.csv
+# Prints each benchmark (with its parameters) found in both, its scores
+# and after/before. Lower is better for the average time benchmarks.
+if [ $# -ne 2 ]; then
+   echo "usage: $0 <before>.csv <after>.csv" >&2
+   exit 1
+fi
+awk -F, '
+   # key is the name and any parameters, after the unit column
+   function key(   k, i) {
+      k = $1
+      for (i = 8; i <= NF; ++i) {
+         k = k "," $i
+      }
+      gsub(/"/, "", k)
+      sub(/,+$/, "", k)
+      return k
+   }
+   { sub(/\r$/, "") }
+   FNR == 1 { next }
+   NR == FNR { before[key()] = $5; next }
+   key() in before {
+      unit = $7
+      gsub(/"/, "", unit)
+      printf "%-60s %12.3f %12.3f %7.2f %s\n", key(), before[key()], $5, $5 / before[key()], unit
+   }
+' "$1" "$2"